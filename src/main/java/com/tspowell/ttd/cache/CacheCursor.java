@@ -0,0 +1,20 @@
+package com.tspowell.ttd.cache;
+
+/**
+ * Walks the entries of a cache in place, without creating an entry object per element.
+ *
+ * A cursor starts before the first entry. key() and value() read the current slot, so they are only valid
+ * until the next call to advance(), and until the cache is modified.
+ */
+public interface CacheCursor<K, V> {
+
+    /**
+     * Move to the next entry.
+     * @return false if there are no more entries
+     */
+    boolean advance();
+
+    K key();
+
+    V value();
+}
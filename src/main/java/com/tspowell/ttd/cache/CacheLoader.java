@@ -0,0 +1,17 @@
+package com.tspowell.ttd.cache;
+
+/**
+ * Computes the value of a key that isn't cached.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * @param key that missed
+     * @return the value of the key, or null if it has none
+     */
+    V load(K key);
+}
@@ -0,0 +1,12 @@
+package com.tspowell.ttd.cache;
+
+/**
+ * An entry that knows the way (the position within its set) it occupies. LRUInvalidator and MRUInvalidator
+ * link such entries by way, with no hashing; other entries are linked by key.
+ */
+public interface IndexedEntry<K, V> extends UnsettableEntry<K, V> {
+    /**
+     * @return the way this entry occupies
+     */
+    int way();
+}
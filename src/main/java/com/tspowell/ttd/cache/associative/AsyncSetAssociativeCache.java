@@ -0,0 +1,258 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.CacheLoader;
+import com.tspowell.ttd.cache.invalidation.CacheSlots;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+/**
+ * A thread-safe N-way set-associative cache of values that are computed asynchronously.
+ *
+ * Every slot holds a CompletableFuture, so a miss never blocks: get() returns the future of the key at once,
+ * and all callers that miss the key while it loads share the same future. Loads run on an Executor; by
+ * default on virtual threads where the JVM has them (Java 21+), and on the common ForkJoinPool otherwise.
+ *
+ * A future that fails, is cancelled, or completes with null is removed from the cache when it completes.
+ * Futures that are still loading are passed over by the eviction policy as long as the set has a completed
+ * entry to evict instead.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ */
+public class AsyncSetAssociativeCache<K, V> {
+    private static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    private final ConcurrentSetAssociativeCache<K, CompletableFuture<V>> futures;
+    private final Executor executor;
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     */
+    public AsyncSetAssociativeCache(final int numberOfSets, final int entriesPerSet) {
+        this(numberOfSets, entriesPerSet, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * ctor with an executor for the loads
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param executor runs the loads
+     */
+    public AsyncSetAssociativeCache(final int numberOfSets, final int entriesPerSet, final Executor executor) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new, executor);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy covering all sets, and an executor for the loads
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param executor runs the loads
+     */
+    public AsyncSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, CompletableFuture<V>> invalidator,
+            final Executor executor) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO,
+                Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors()), executor);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy, a set index function, a stripe count and an executor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     * @param concurrencyLevel number of stripes, at most one per set
+     * @param executor runs the loads
+     */
+    public AsyncSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, CompletableFuture<V>> invalidator,
+            final SetIndexer.Factory setIndexer,
+            final int concurrencyLevel,
+            final Executor executor) {
+        this.futures = new ConcurrentSetAssociativeCache<>(numberOfSets, entriesPerSet,
+                (sets, ways, slots) -> new CompletedFirst<>(invalidator.create(sets, ways, slots), slots),
+                setIndexer, concurrencyLevel);
+        this.executor = executor;
+    }
+
+    /**
+     * Virtual threads if the JVM has them, without requiring Java 21 to build.
+     */
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return ForkJoinPool.commonPool();
+        }
+    }
+
+    /**
+     * Get the future value of a key, starting to load it on a miss. Never blocks on the load.
+     * @param key to look up
+     * @param loader computes the value of the key, on the executor
+     * @return the future shared by every caller of the key, until it is removed or evicted
+     */
+    public CompletableFuture<V> get(final K key, final CacheLoader<? super K, ? extends V> loader) {
+        final CompletableFuture<V> cached = this.futures.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CompletableFuture<V> created = new CompletableFuture<>();
+        final CompletableFuture<V> future = this.futures.computeIfAbsent(key, k -> created);
+
+        if (future == created) {
+            removeOnFailure(key, created);
+
+            try {
+                this.executor.execute(() -> {
+                    try {
+                        created.complete(loader.load(key));
+                    } catch (Throwable t) {
+                        created.completeExceptionally(t);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Rejected by the executor
+                created.completeExceptionally(e);
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * @param key to look up
+     * @return the future value of the key, or null if it isn't cached
+     */
+    public CompletableFuture<V> getIfPresent(final K key) {
+        return this.futures.get(key);
+    }
+
+    /**
+     * Cache the future value of a key, which is removed again if it fails.
+     * @param key to cache
+     * @param future value of the key
+     */
+    public void put(final K key, final CompletableFuture<V> future) {
+        this.futures.put(key, future);
+        removeOnFailure(key, future);
+    }
+
+    /**
+     * Remove a key. A load in progress still completes its future, but doesn't cache the value.
+     * @param key to remove
+     * @return the future value of the key, or null if it wasn't cached
+     */
+    public CompletableFuture<V> remove(final K key) {
+        return this.futures.remove(key);
+    }
+
+    /**
+     * @return the number of cached futures, including the ones still loading
+     */
+    public int size() {
+        return this.futures.size();
+    }
+
+    public void clear() {
+        this.futures.clear();
+    }
+
+    private void removeOnFailure(final K key, final CompletableFuture<V> future) {
+        future.whenComplete((value, failure) -> {
+            if (failure != null || value == null) {
+                // Only this future: the key may have been loaded again since
+                this.futures.remove(key, future);
+            }
+        });
+    }
+
+    /**
+     * Steers a policy away from futures that haven't completed: the victim for a new entry is the first
+     * completed way in the policy's order. If every way is pending, the policy's own choice is evicted
+     * regardless.
+     */
+    private static final class CompletedFirst<K, V> implements IndexedCacheInvalidator<K, CompletableFuture<V>> {
+        private final IndexedCacheInvalidator<K, CompletableFuture<V>> delegate;
+        private final CacheSlots<K, CompletableFuture<V>> slots;
+
+        CompletedFirst(
+                final IndexedCacheInvalidator<K, CompletableFuture<V>> delegate,
+                final CacheSlots<K, CompletableFuture<V>> slots) {
+            this.delegate = delegate;
+            this.slots = slots;
+        }
+
+        @Override
+        public int selectVictim(final int set) {
+            return this.delegate.selectVictim(set);
+        }
+
+        @Override
+        public int selectVictim(final int set, final int candidateHash) {
+            final int victim = selectVictim(set, candidateHash, way -> true);
+
+            return victim >= 0 ? victim : this.delegate.selectVictim(set, candidateHash);
+        }
+
+        @Override
+        public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+            return this.delegate.selectVictim(set, candidateHash,
+                    way -> this.slots.value(set, way).isDone() && evictable.test(way));
+        }
+
+        @Override
+        public void onHit(final int set, final int way) {
+            this.delegate.onHit(set, way);
+        }
+
+        @Override
+        public void onUpdate(final int set, final int way) {
+            this.delegate.onUpdate(set, way);
+        }
+
+        @Override
+        public void onInsert(final int set, final int way) {
+            this.delegate.onInsert(set, way);
+        }
+
+        @Override
+        public void onRemove(final int set, final int way) {
+            this.delegate.onRemove(set, way);
+        }
+
+        @Override
+        public boolean admit(final int set, final int victimWay, final int candidateHash) {
+            return this.delegate.admit(set, victimWay, candidateHash);
+        }
+
+        @Override
+        public void onEvict(final int set, final int way) {
+            this.delegate.onEvict(set, way);
+        }
+
+        @Override
+        public boolean reset(final int set) {
+            return this.delegate.reset(set);
+        }
+
+        @Override
+        public boolean setsIndependent() {
+            return this.delegate.setsIndependent();
+        }
+    }
+}
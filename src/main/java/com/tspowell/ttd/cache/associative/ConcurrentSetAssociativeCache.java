@@ -0,0 +1,1160 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe N-way set-associative cache.
+ *
+ * The sets are split into stripes of consecutive sets, and every stripe is a SetAssociativeCache guarded by
+ * its own lock, so operations on sets of different stripes run in parallel. A key maps to exactly the same
+ * set as in a SetAssociativeCache with the same geometry and set index function, and every set is evicted
+ * independently, so the stripes only change which operations contend. With one stripe per set, every set
+ * has its own lock. Every stripe but the last has a power-of-two number of sets, so the stripe and the set
+ * within it are the high and low bits of the set index, with no division.
+ *
+ * Reads don't lock: get() and containsKey() probe under an optimistic StampedLock read stamp and retry
+ * under the read lock only if a writer changed the stripe meanwhile. Hits are recorded in a small lossy buffer
+ * per stripe, and passed on to the invalidator in batches: by a reader that fills the buffer and finds the
+ * write lock free, and by every writer before it changes the stripe. Recency is approximate under contention.
+ *
+ * computeIfAbsent() runs the mapping function outside the stripe lock, once per key: a caller that misses
+ * while the key is already being computed waits for that computation instead of starting its own, and loads
+ * of other keys proceed meanwhile.
+ *
+ * Each stripe publishes its number of entries in a volatile count whenever it releases its write lock;
+ * size() adds up the counts without locking, so it is a snapshot that may be stale under concurrent updates,
+ * but it sees every update that completed before it started. Views and iterators are weakly consistent: they copy one stripe at a
+ * time, under its lock. Null keys and values are not supported.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ */
+public class ConcurrentSetAssociativeCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    // Scratch space of getAll(), per thread
+    private static final ThreadLocal<long[]> BATCH_ORDER = ThreadLocal.withInitial(() -> new long[64]);
+
+    // log2 of the number of sets per stripe
+    private final int stripeShift;
+    private final SetIndexer setIndexer;
+    private final Stripe<K, V>[] stripes;
+
+    // Live views, created on first use
+    private Set<K> keySet;
+    private Collection<V> valueView;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     */
+    public ConcurrentSetAssociativeCache(final int numberOfSets, final int entriesPerSet) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new);
+    }
+
+    /**
+     * ctor with a per-set cache invalidation strategy
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator of each set
+     */
+    public ConcurrentSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final Supplier<CacheInvalidator<K, V>> invalidator) {
+        this(numberOfSets, entriesPerSet, CacheInvalidatorAdapter.factory(invalidator));
+    }
+
+    /**
+     * ctor with a cache invalidation strategy covering all sets
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     */
+    public ConcurrentSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy and a set index function, with a stripe count suited to the
+     * number of processors
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     */
+    public ConcurrentSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        this(numberOfSets, entriesPerSet, invalidator, setIndexer,
+                Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * ctor with a cache invalidation strategy, a set index function and a stripe count
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     * @param concurrencyLevel number of stripes, at most one per set; the sets per stripe are rounded down to a
+     *                         power of two, which may add stripes
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer,
+            final int concurrencyLevel) {
+        if (numberOfSets < 1 || entriesPerSet < 1) {
+            throw new IllegalArgumentException("Must configure at least one set, and one entry per set.");
+        }
+
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Must configure at least one stripe.");
+        }
+
+        this.setIndexer = setIndexer.create(numberOfSets);
+
+        final int stripeCount = Math.min(concurrencyLevel, numberOfSets);
+        this.stripeShift = 31 - Integer.numberOfLeadingZeros((numberOfSets + stripeCount - 1) / stripeCount);
+
+        final int setsPerStripe = 1 << this.stripeShift;
+        final int localMask = setsPerStripe - 1;
+        this.stripes = (Stripe<K, V>[]) Array.newInstance(
+                Stripe.class, (numberOfSets + setsPerStripe - 1) >>> this.stripeShift);
+
+        // A stripe indexes its sets with the global set index, relative to its first set
+        final SetIndexer.Factory localIndexer = sets -> hash -> this.setIndexer.setIndex(hash) & localMask;
+
+        for (int i = 0; i < this.stripes.length; ++i) {
+            final int sets = Math.min(setsPerStripe, numberOfSets - (i << this.stripeShift));
+            this.stripes[i] = new Stripe<>(sets, entriesPerSet, invalidator, localIndexer);
+        }
+    }
+
+    /**
+     * One stripe of sets, and its lock.
+     */
+    private static final class Stripe<K, V> extends SetAssociativeCache<K, V> {
+        final StampedLock lock = new StampedLock();
+        final ReadBuffer readBuffer = new ReadBuffer();
+        private final IntConsumer touch = this::touchSlot;
+
+        // The size, as of the last release of the write lock, for readers that don't lock
+        volatile int count = 0;
+
+        // The computeIfAbsent() calls in flight in the stripe's sets, by key. Guarded by the write lock.
+        final Map<Object, Load<V>> loads = new HashMap<>();
+
+        // When every slot was last written, if tracked
+        private long[] writeTimes;
+        private LongSupplier ticker;
+
+        Stripe(
+                final int numberOfSets,
+                final int entriesPerSet,
+                final IndexedCacheInvalidator.Factory<K, V> invalidator,
+                final SetIndexer.Factory setIndexer) {
+            super(numberOfSets, entriesPerSet, invalidator, setIndexer);
+        }
+
+        /**
+         * Pass the buffered hits to the invalidator. Requires the write lock.
+         */
+        void drainReadBuffer() {
+            this.readBuffer.drainTo(this.touch);
+        }
+
+        void trackWriteTimes(final LongSupplier ticker) {
+            this.writeTimes = new long[capacity()];
+            this.ticker = ticker;
+        }
+
+        /**
+         * @return the write time of an occupied slot, or Long.MIN_VALUE if write times aren't tracked
+         */
+        long writeTimeAt(final int slot) {
+            return this.writeTimes == null ? Long.MIN_VALUE : this.writeTimes[slot];
+        }
+
+        /**
+         * Every update of the stripe ends up here, so this is where the write time of a slot is recorded.
+         */
+        @Override
+        public V put(final K key, final V value) {
+            final V result = super.put(key, value);
+
+            if (this.writeTimes != null) {
+                final int slot = peekSlot(key, key.hashCode());
+
+                // The invalidator may not have admitted a new key
+                if (slot >= 0) {
+                    this.writeTimes[slot] = this.ticker.getAsLong();
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * A value being computed by one thread, awaited by the others that missed the same key.
+     */
+    private static final class Load<V> extends CompletableFuture<V> {
+        final Thread loader = Thread.currentThread();
+
+        /**
+         * Wait for the value, and rethrow the exception the mapping function failed with, if it did.
+         */
+        V await() {
+            if (this.loader == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive computeIfAbsent() of the same key");
+            }
+
+            try {
+                return join();
+            } catch (CompletionException e) {
+                final Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Take the write lock of a stripe, and apply its buffered hits before anything can be evicted.
+     * @return the stamp to unlock with
+     */
+    private static long writeLock(final Stripe<?, ?> stripe) {
+        final long stamp = stripe.lock.writeLock();
+
+        try {
+            stripe.drainReadBuffer();
+        } catch (RuntimeException e) {
+            unlockWrite(stripe, stamp);
+            throw e;
+        }
+
+        return stamp;
+    }
+
+    /**
+     * Publish the stripe's size for size() and isEmpty(), and release its write lock.
+     */
+    private static void unlockWrite(final Stripe<?, ?> stripe, final long stamp) {
+        stripe.count = stripe.size();
+        stripe.lock.unlockWrite(stamp);
+    }
+
+    private Stripe<K, V> stripeFor(final Object key) {
+        return stripeForHash(key.hashCode());
+    }
+
+    private Stripe<K, V> stripeForHash(final int hash) {
+        return this.stripes[stripeIndex(hash)];
+    }
+
+    private int stripeIndex(final int hash) {
+        return this.setIndexer.setIndex(hash) >>> this.stripeShift;
+    }
+
+    /**
+     * Find the slot of a key without blocking writers: probe under an optimistic read stamp, and fall back
+     * to a read lock only if a writer got in the way.
+     * @return the slot holding the key, or -1
+     */
+    private int findSlot(final Stripe<K, V> stripe, final Object key, final int hash) {
+        final StampedLock lock = stripe.lock;
+        final long optimistic = lock.tryOptimisticRead();
+
+        if (optimistic != 0) {
+            try {
+                final int slot = stripe.peekSlot(key, hash);
+
+                if (lock.validate(optimistic)) {
+                    return slot;
+                }
+            } catch (RuntimeException e) {
+                // An inconsistent read can make a key's equals() fail; only a validated read may throw
+                if (lock.validate(optimistic)) {
+                    throw e;
+                }
+            }
+        }
+
+        final long stamp = lock.readLock();
+        try {
+            return stripe.peekSlot(key, hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Record the time every entry is written, from now on.
+     * @param ticker current time, in nanoseconds
+     */
+    void trackWriteTimes(final LongSupplier ticker) {
+        for (final Stripe<K, V> stripe : this.stripes) {
+            final long stamp = writeLock(stripe);
+            try {
+                stripe.trackWriteTimes(ticker);
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+        }
+    }
+
+    /**
+     * Look up when a key was last written, without locking and without counting as a hit.
+     * @return the ticker time of the last write, or Long.MIN_VALUE if the key isn't cached or write times
+     *         aren't tracked
+     */
+    long writeTime(final Object key) {
+        final int hash = key.hashCode();
+        final Stripe<K, V> stripe = stripeForHash(hash);
+        final StampedLock lock = stripe.lock;
+        final long optimistic = lock.tryOptimisticRead();
+
+        if (optimistic != 0) {
+            try {
+                final int slot = stripe.peekSlot(key, hash);
+                final long writeTime = slot < 0 ? Long.MIN_VALUE : stripe.writeTimeAt(slot);
+
+                if (lock.validate(optimistic)) {
+                    return writeTime;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(optimistic)) {
+                    throw e;
+                }
+            }
+        }
+
+        final long stamp = lock.readLock();
+        try {
+            final int slot = stripe.peekSlot(key, hash);
+            return slot < 0 ? Long.MIN_VALUE : stripe.writeTimeAt(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Buffer a hit for the invalidator. Once the buffer fills up, drain it if the stripe is free right now;
+     * otherwise the next writer will. Hits never block, so some recency updates are lost under contention.
+     */
+    private void recordHit(final Stripe<K, V> stripe, final int slot) {
+        if (!stripe.readBuffer.offer(slot)) {
+            return;
+        }
+
+        final long stamp = stripe.lock.tryWriteLock();
+
+        if (stamp != 0) {
+            try {
+                stripe.drainReadBuffer();
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+        }
+    }
+
+    /**
+     * @return the number of stripes, each with its own lock
+     */
+    public int stripes() {
+        return this.stripes.length;
+    }
+
+    /**
+     * @return the number of entries the cache can hold
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (final Stripe<K, V> stripe : this.stripes) {
+            capacity += stripe.capacity();
+        }
+
+        return capacity;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (final Stripe<K, V> stripe : this.stripes) {
+            size += stripe.count;
+        }
+
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (final Stripe<K, V> stripe : this.stripes) {
+            if (stripe.count != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        final int hash = key.hashCode();
+
+        return findSlot(stripeForHash(hash), key, hash) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(final Object value) {
+        for (final Stripe<K, V> stripe : this.stripes) {
+            final long stamp = writeLock(stripe);
+            try {
+                if (stripe.containsValue(value)) {
+                    return true;
+                }
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Look up a key without locking: the value is read under an optimistic read stamp and validated.
+     * The hit is buffered, and passed on to the invalidator in a batch.
+     */
+    @Override
+    public V get(final Object key) {
+        final int hash = key.hashCode();
+        final Stripe<K, V> stripe = stripeForHash(hash);
+        final StampedLock lock = stripe.lock;
+        final long optimistic = lock.tryOptimisticRead();
+
+        if (optimistic != 0) {
+            try {
+                final int slot = stripe.peekSlot(key, hash);
+                final V value = slot < 0 ? null : stripe.valueAt(slot);
+
+                if (lock.validate(optimistic)) {
+                    if (slot >= 0) {
+                        recordHit(stripe, slot);
+                    }
+
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(optimistic)) {
+                    throw e;
+                }
+            }
+        }
+
+        final int slot;
+        final V value;
+
+        final long stamp = lock.readLock();
+        try {
+            slot = stripe.peekSlot(key, hash);
+            value = slot < 0 ? null : stripe.valueAt(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        if (slot >= 0) {
+            recordHit(stripe, slot);
+        }
+
+        return value;
+    }
+
+    /**
+     * Cache a value, evicting an entry of the key's set if it is full.
+     * @return the previous value of the key, or null
+     */
+    @Override
+    public V put(final K key, final V value) {
+        Objects.requireNonNull(value);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            return stripe.containsKey(key) ? stripe.put(key, value) : putNew(stripe, key, value);
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * The value of a key, for an operation that only checks it under the stripe's write lock: not a hit.
+     */
+    private static <V> V peek(final Stripe<?, V> stripe, final Object key) {
+        final int slot = stripe.peekSlot(key, key.hashCode());
+
+        return slot < 0 ? null : stripe.valueAt(slot);
+    }
+
+    /**
+     * Insert a key that isn't cached. SetAssociativeCache.put() returns the new value for a new key.
+     */
+    private static <K, V> V putNew(final Stripe<K, V> stripe, final K key, final V value) {
+        stripe.put(key, value);
+        return null;
+    }
+
+    @Override
+    public V remove(final Object key) {
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            return stripe.remove(key);
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    @Override
+    public V putIfAbsent(final K key, final V value) {
+        Objects.requireNonNull(value);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            final V current = peek(stripe, key);
+            return current != null ? current : putNew(stripe, key, value);
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(final Object key, final Object value) {
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            if (value == null || !value.equals(peek(stripe, key))) {
+                return false;
+            }
+
+            stripe.remove(key);
+            return true;
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    @Override
+    public boolean replace(final K key, final V oldValue, final V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            if (!oldValue.equals(peek(stripe, key))) {
+                return false;
+            }
+
+            stripe.put(key, newValue);
+            return true;
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    @Override
+    public V replace(final K key, final V value) {
+        Objects.requireNonNull(value);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            return stripe.containsKey(key) ? stripe.put(key, value) : null;
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * Compute the value of a missing key, without holding the stripe lock. Concurrent misses on the key wait
+     * for the first caller's computation and share its result, or its exception. If the key was put while
+     * its value was being computed, that value is kept and returned.
+     */
+    @Override
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction);
+
+        final V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final Stripe<K, V> stripe = stripeFor(key);
+        final Load<V> inFlight;
+        final Load<V> load;
+
+        final long stamp = writeLock(stripe);
+        try {
+            // Put by another thread since get() missed: still a miss for this caller
+            final V current = peek(stripe, key);
+            if (current != null) {
+                return current;
+            }
+
+            inFlight = stripe.loads.get(key);
+            if (inFlight == null) {
+                load = new Load<>();
+                stripe.loads.put(key, load);
+            } else {
+                load = inFlight;
+            }
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+
+        return inFlight == null ? runLoad(stripe, key, load, mappingFunction) : load.await();
+    }
+
+    /**
+     * Compute a value as the owner of its load, cache it, and hand it to the waiting callers.
+     */
+    private static <K, V> V runLoad(
+            final Stripe<K, V> stripe,
+            final K key,
+            final Load<V> load,
+            final Function<? super K, ? extends V> mappingFunction) {
+        V value;
+
+        try {
+            value = mappingFunction.apply(key);
+        } catch (final Throwable e) {
+            // Including checked exceptions thrown sneakily: the load must not stay in flight
+            finishLoad(stripe, key);
+            load.completeExceptionally(e);
+            throw e;
+        }
+
+        final long stamp = writeLock(stripe);
+        try {
+            stripe.loads.remove(key);
+
+            if (value != null) {
+                final V current = peek(stripe, key);
+
+                if (current != null) {
+                    value = current;
+                } else {
+                    stripe.put(key, value);
+                }
+            }
+        } catch (final Throwable e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+
+        load.complete(value);
+        return value;
+    }
+
+    private static void finishLoad(final Stripe<?, ?> stripe, final Object key) {
+        final long stamp = writeLock(stripe);
+        try {
+            stripe.loads.remove(key);
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * Remap a cached value under the stripe lock. The new value counts as an update, the read of the old one
+     * as nothing more.
+     */
+    @Override
+    public V computeIfPresent(
+            final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            final V current = peek(stripe, key);
+            return current == null ? null : store(stripe, key, remappingFunction.apply(key, current));
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * Compute a value under the stripe lock, from the cached value or null. The new value counts as an update
+     * or an insert, the read of the old one as nothing more.
+     */
+    @Override
+    public V compute(final K key, final BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(remappingFunction);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            return store(stripe, key, remappingFunction.apply(key, peek(stripe, key)));
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * Merge a value with the cached value under the stripe lock. The result counts as an update or an insert,
+     * the read of the old value as nothing more.
+     */
+    @Override
+    public V merge(
+            final K key, final V value, final BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        final Stripe<K, V> stripe = stripeFor(key);
+
+        final long stamp = writeLock(stripe);
+        try {
+            final V current = peek(stripe, key);
+            return store(stripe, key, current == null ? value : remappingFunction.apply(current, value));
+        } finally {
+            unlockWrite(stripe, stamp);
+        }
+    }
+
+    /**
+     * Cache the result of a remapping function, or remove the key if it is null. Requires the write lock.
+     * @return the value
+     */
+    private static <K, V> V store(final Stripe<K, V> stripe, final K key, final V value) {
+        if (value == null) {
+            stripe.remove(key);
+        } else {
+            stripe.put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Put the entries a stripe at a time, taking each stripe's lock once. Not atomic: other threads may see
+     * some stripes updated before others.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(final Map<? extends K, ? extends V> m) {
+        final Object[] keys = new Object[m.size()];
+        final Object[] values = new Object[keys.length];
+        final long[] order = new long[keys.length];
+
+        int i = 0;
+        for (final Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = Objects.requireNonNull(entry.getValue());
+            order[i] = (long) stripeIndex(keys[i].hashCode()) << 32 | i;
+            ++i;
+        }
+
+        Arrays.sort(order);
+
+        for (int start = 0; start < order.length; ) {
+            final Stripe<K, V> stripe = this.stripes[(int) (order[start] >>> 32)];
+            final int end = endOfStripe(order, start, order.length);
+
+            final long stamp = writeLock(stripe);
+            try {
+                for (int j = start; j < end; ++j) {
+                    final int index = (int) order[j];
+                    stripe.put((K) keys[index], (V) values[index]);
+                }
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+
+            start = end;
+        }
+    }
+
+    /**
+     * Look up many keys at once.
+     * @param keys to look up
+     * @return the values of the keys that are cached, in the order of the keys
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+        final List<K> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+
+        final K[] keyArray = (K[]) keyList.toArray();
+        final V[] values = (V[]) new Object[keyArray.length];
+        getAll(keyArray, values);
+
+        final Map<K, V> found = new LinkedHashMap<>();
+        for (int i = 0; i < keyArray.length; ++i) {
+            if (values[i] != null) {
+                found.put(keyArray[i], values[i]);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Look up many keys at once, without allocating once the calling thread has warmed up. The keys are
+     * grouped by stripe, and each stripe is read under one read lock; the hits are buffered like get()'s.
+     * Not atomic across stripes.
+     * @param keys to look up
+     * @param values receives the value of each key, or null; at least as long as keys
+     * @return the number of keys found
+     */
+    public int getAll(final K[] keys, final V[] values) {
+        if (values.length < keys.length) {
+            throw new IllegalArgumentException("There must be a value for every key.");
+        }
+
+        final long[] order = batchOrder(keys.length);
+        for (int i = 0; i < keys.length; ++i) {
+            order[i] = (long) stripeIndex(keys[i].hashCode()) << 32 | i;
+        }
+
+        Arrays.sort(order, 0, keys.length);
+
+        int hits = 0;
+        for (int start = 0; start < keys.length; ) {
+            final Stripe<K, V> stripe = this.stripes[(int) (order[start] >>> 32)];
+            final int end = endOfStripe(order, start, keys.length);
+
+            final long stamp = stripe.lock.readLock();
+            try {
+                for (int j = start; j < end; ++j) {
+                    final int index = (int) order[j];
+                    final int slot = stripe.peekSlot(keys[index], keys[index].hashCode());
+
+                    values[index] = slot < 0 ? null : stripe.valueAt(slot);
+
+                    // Keep the slot for recordHit(), in place of the stripe index
+                    order[j] = (long) slot << 32 | index;
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+
+            for (int j = start; j < end; ++j) {
+                final int slot = (int) (order[j] >> 32);
+
+                if (slot >= 0) {
+                    recordHit(stripe, slot);
+                    ++hits;
+                }
+            }
+
+            start = end;
+        }
+
+        return hits;
+    }
+
+    /**
+     * @return the end of the run of keys of the stripe at start, in keys sorted by stripe
+     */
+    private static int endOfStripe(final long[] order, final int start, final int length) {
+        final long stripe = order[start] >>> 32;
+
+        int end = start + 1;
+        while (end < length && order[end] >>> 32 == stripe) {
+            ++end;
+        }
+
+        return end;
+    }
+
+    /**
+     * @return this thread's scratch array for sorting keys by stripe, with room for at least the given length
+     */
+    private static long[] batchOrder(final int length) {
+        long[] order = BATCH_ORDER.get();
+
+        if (order.length < length) {
+            order = new long[Math.max(length, 2 * order.length)];
+            BATCH_ORDER.set(order);
+        }
+
+        return order;
+    }
+
+    /**
+     * Clear every stripe in turn. Not atomic: entries put into a stripe that was already cleared survive.
+     */
+    @Override
+    public void clear() {
+        for (final Stripe<K, V> stripe : this.stripes) {
+            final long stamp = writeLock(stripe);
+            try {
+                stripe.clear();
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+        }
+    }
+
+    /**
+     * Visit the entries one stripe at a time. The action runs outside the stripe locks, on a copy of the stripe.
+     */
+    @Override
+    public void forEach(final BiConsumer<? super K, ? super V> action) {
+        for (final Iterator<Map.Entry<K, V>> itr = new SnapshotIterator(); itr.hasNext(); ) {
+            final Map.Entry<K, V> entry = itr.next();
+            action.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        Set<K> view = this.keySet;
+        if (view == null) {
+            view = new KeySet();
+            this.keySet = view;
+        }
+
+        return view;
+    }
+
+    @Override
+    public Collection<V> values() {
+        Collection<V> view = this.valueView;
+        if (view == null) {
+            view = new Values();
+            this.valueView = view;
+        }
+
+        return view;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> view = this.entrySet;
+        if (view == null) {
+            view = new EntrySet();
+            this.entrySet = view;
+        }
+
+        return view;
+    }
+
+    /**
+     * Copies the entries of one stripe at a time, under the stripe's lock.
+     * remove() removes the key of the last entry returned, if it's still cached.
+     */
+    private class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+        private final List<Map.Entry<K, V>> buffer = new ArrayList<>();
+        private int nextStripe = 0;
+        private int index = 0;
+        private Map.Entry<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (this.index == this.buffer.size()) {
+                if (this.nextStripe == stripes.length) {
+                    return false;
+                }
+
+                this.buffer.clear();
+                this.index = 0;
+
+                final Stripe<K, V> stripe = stripes[this.nextStripe++];
+                final long stamp = writeLock(stripe);
+                try {
+                    stripe.forEachEntry((key, value) -> this.buffer.add(new SimpleImmutableEntry<>(key, value)));
+                } finally {
+                    unlockWrite(stripe, stamp);
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.last = this.buffer.get(this.index++);
+
+            return this.last;
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == null) {
+                throw new IllegalStateException();
+            }
+
+            ConcurrentSetAssociativeCache.this.remove(this.last.getKey());
+            this.last = null;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<Map.Entry<K, V>> entries = new SnapshotIterator();
+
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return entries.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSetAssociativeCache.this.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            return ConcurrentSetAssociativeCache.this.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentSetAssociativeCache.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            final Iterator<Map.Entry<K, V>> entries = new SnapshotIterator();
+
+            return new Iterator<V>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public V next() {
+                    return entries.next().getValue();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSetAssociativeCache.this.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentSetAssociativeCache.this.clear();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new SnapshotIterator();
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentSetAssociativeCache.this.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            final Stripe<K, V> stripe = stripeFor(((Map.Entry<?, ?>) o).getKey());
+
+            final long stamp = writeLock(stripe);
+            try {
+                return stripe.entrySet().contains(o);
+            } finally {
+                unlockWrite(stripe, stamp);
+            }
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+
+            return ConcurrentSetAssociativeCache.this.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            ConcurrentSetAssociativeCache.this.clear();
+        }
+    }
+}
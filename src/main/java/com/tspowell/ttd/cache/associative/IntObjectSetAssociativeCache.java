@@ -0,0 +1,210 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * An N-way set-associative cache from int keys to objects.
+ *
+ * Same geometry, set index functions and invalidators as SetAssociativeCache, but keys live in an int array,
+ * so get() and put() neither box the key nor allocate. Only invalidators that read keys through CacheSlots
+ * (e.g. per-set CacheInvalidators) see boxed copies.
+ *
+ * @param <V> value class
+ */
+public class IntObjectSetAssociativeCache<V> extends SetAssociativeTable<Integer, V> {
+    private final int[] keys;
+    private final Object[] values;
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     */
+    public IntObjectSetAssociativeCache(final int numberOfSets, final int entriesPerSet) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new);
+    }
+
+    /**
+     * ctor with a per-set cache invalidation strategy
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator of each set
+     */
+    public IntObjectSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final Supplier<CacheInvalidator<Integer, V>> invalidator) {
+        this(numberOfSets, entriesPerSet, CacheInvalidatorAdapter.factory(invalidator));
+    }
+
+    /**
+     * ctor with a cache invalidation strategy covering all sets
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     */
+    public IntObjectSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<Integer, V> invalidator) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy and a set index function
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     */
+    public IntObjectSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<Integer, V> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        super(numberOfSets, entriesPerSet, invalidator, setIndexer);
+
+        this.keys = new int[capacity()];
+        this.values = new Object[capacity()];
+    }
+
+    @Override
+    Integer keyAt(final int slot) {
+        return this.keys[slot];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    V valueAt(final int slot) {
+        return (V) this.values[slot];
+    }
+
+    @Override
+    void clearSlot(final int slot) {
+        this.values[slot] = null;
+    }
+
+    @Override
+    void clearSlots(final int from, final int to) {
+        Arrays.fill(this.values, from, to, null);
+    }
+
+    /**
+     * The hash of a key, matching Integer.hashCode() so that keys land in the same sets as in a
+     * SetAssociativeCache of Integers.
+     */
+    private static int hash(final int key) {
+        return key;
+    }
+
+    /**
+     * Return the way within a set holding a given key
+     * @param set to search
+     * @param hash pre-computed hash of the key
+     * @param key given
+     * @return way found or -1
+     */
+    private int findWay(final int set, final int hash, final int key) {
+        final int base = set * this.entriesPerSet;
+        final byte tag = tagFor(hash);
+
+        for (int word = 0; word < this.wordsPerSet; ++word) {
+            for (long bits = candidates(set, word, tag); bits != 0; bits &= bits - 1) {
+                final int way = (word << 6) + Long.numberOfTrailingZeros(bits);
+
+                if (this.keys[base + way] == key) {
+                    return way;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean containsKey(final int key) {
+        final int hash = hash(key);
+
+        return findWay(setForHash(hash), hash, key) >= 0;
+    }
+
+    /**
+     * @param key to look up
+     * @return the cached value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final int key) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way >= 0) {
+            this.invalidator.onHit(set, way);
+            return (V) this.values[set * this.entriesPerSet + way];
+        }
+
+        return null;
+    }
+
+    /**
+     * Cache a value, evicting an entry of the key's set if it is full.
+     * @param key to cache
+     * @param value to cache
+     * @return the previous value of the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final int key, final V value) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int base = set * this.entriesPerSet;
+        final int existing = findWay(set, hash, key);
+
+        if (existing >= 0) {
+            final V oldValue = (V) this.values[base + existing];
+            this.values[base + existing] = value;
+            this.invalidator.onUpdate(set, existing);
+
+            return oldValue;
+        }
+
+        final int way = claimWay(set, hash);
+        if (way < 0) {
+            // Not admitted by the invalidator
+            return null;
+        }
+
+        this.keys[base + way] = key;
+        this.values[base + way] = value;
+
+        this.invalidator.onInsert(set, way);
+
+        return null;
+    }
+
+    /**
+     * Remove a cache entry by key
+     *
+     * @param key to remove from the cache
+     * @return the previous value stored at that key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final int key) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way < 0) {
+            return null;
+        }
+
+        final V prevValue = (V) this.values[set * this.entriesPerSet + way];
+        removeWay(set, way);
+
+        return prevValue;
+    }
+}
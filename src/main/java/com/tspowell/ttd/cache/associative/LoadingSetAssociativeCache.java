@@ -0,0 +1,188 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.CacheLoader;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * A thread-safe N-way set-associative cache, that loads missing values.
+ *
+ * Loads are single-flight: when several threads miss the same key, one of them calls the loader and the
+ * others wait for its result, so a cold key costs the backend one load. Threads that miss other keys, in the
+ * same set or not, load in parallel. A key that loads as null is not cached.
+ *
+ * With a RefreshPolicy, entries that are due are reloaded in the background on read, while the read returns
+ * the cached value, so hot keys don't stall on reloads.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ */
+public class LoadingSetAssociativeCache<K, V> extends ConcurrentSetAssociativeCache<K, V> {
+    private final CacheLoader<K, V> loader;
+    private final Function<K, V> timedLoader = this::load;
+    private final RefreshPolicy refresh;
+
+    // The keys being refreshed, so that a key is reloaded once at a time
+    private final Set<K> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // Moving average of the load time, for early refresh
+    private volatile long loadNanos = 0;
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param loader computes the values of missing keys
+     */
+    public LoadingSetAssociativeCache(final int numberOfSets, final int entriesPerSet, final CacheLoader<K, V> loader) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new, loader);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy covering all sets
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param loader computes the values of missing keys
+     */
+    public LoadingSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final CacheLoader<K, V> loader) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO,
+                Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors()), loader);
+    }
+
+    /**
+     * ctor with background refresh
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param loader computes the values of missing keys
+     * @param refresh when to reload cached entries
+     */
+    public LoadingSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final CacheLoader<K, V> loader,
+            final RefreshPolicy refresh) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new, SetIndexers.MODULO,
+                Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors()), loader, refresh);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy, a set index function and a stripe count
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     * @param concurrencyLevel number of stripes, at most one per set
+     * @param loader computes the values of missing keys
+     */
+    public LoadingSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer,
+            final int concurrencyLevel,
+            final CacheLoader<K, V> loader) {
+        this(numberOfSets, entriesPerSet, invalidator, setIndexer, concurrencyLevel, loader, null);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy, a set index function, a stripe count and background refresh
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of each stripe
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     * @param concurrencyLevel number of stripes, at most one per set
+     * @param loader computes the values of missing keys
+     * @param refresh when to reload cached entries, or null to keep them until evicted
+     */
+    public LoadingSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer,
+            final int concurrencyLevel,
+            final CacheLoader<K, V> loader,
+            final RefreshPolicy refresh) {
+        super(numberOfSets, entriesPerSet, invalidator, setIndexer, concurrencyLevel);
+        this.loader = loader;
+        this.refresh = refresh;
+
+        if (refresh != null) {
+            trackWriteTimes(refresh.ticker());
+        }
+    }
+
+    /**
+     * Get the value of a key, loading it on a miss. Concurrent misses on the key share one load.
+     * @param key to look up
+     * @return the cached or loaded value, or null if the loader found none
+     */
+    public V getOrLoad(final K key) {
+        final V value = computeIfAbsent(key, this.timedLoader);
+
+        if (this.refresh != null && value != null) {
+            final long writeTime = writeTime(key);
+
+            if (writeTime != Long.MIN_VALUE
+                    && this.refresh.isDue(this.refresh.ticker().getAsLong() - writeTime, this.loadNanos)) {
+                refresh(key, value);
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Reload a key in the background, unless it is already being reloaded. The new value replaces the old
+     * one only if the entry wasn't changed meanwhile.
+     */
+    private void refresh(final K key, final V oldValue) {
+        if (!this.refreshing.add(key)) {
+            return;
+        }
+
+        try {
+            this.refresh.executor().execute(() -> {
+                try {
+                    final V newValue = load(key);
+
+                    if (newValue == null) {
+                        remove(key, oldValue);
+                    } else {
+                        replace(key, oldValue, newValue);
+                    }
+                } catch (RuntimeException e) {
+                    // Keep serving the old value; the next read that finds it due tries again
+                } finally {
+                    this.refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.remove(key);
+        }
+    }
+
+    /**
+     * Call the loader, and fold its run time into the average.
+     */
+    private V load(final K key) {
+        final long start = System.nanoTime();
+        final V value = this.loader.load(key);
+
+        final long elapsed = System.nanoTime() - start;
+        final long average = this.loadNanos;
+        this.loadNanos = average == 0 ? elapsed : average + (elapsed - average) / 8;
+
+        return value;
+    }
+}
@@ -0,0 +1,198 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.util.function.Supplier;
+
+/**
+ * An N-way set-associative cache from long keys to long values.
+ *
+ * Same geometry, set index functions and invalidators as SetAssociativeCache, but keys and values live in
+ * long arrays, so get() and put() neither box nor allocate. Only invalidators that read keys or values through
+ * CacheSlots (e.g. per-set CacheInvalidators) see boxed copies.
+ */
+public class LongLongSetAssociativeCache extends SetAssociativeTable<Long, Long> {
+    private final long[] keys;
+    private final long[] values;
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     */
+    public LongLongSetAssociativeCache(final int numberOfSets, final int entriesPerSet) {
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new);
+    }
+
+    /**
+     * ctor with a per-set cache invalidation strategy
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator of each set
+     */
+    public LongLongSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final Supplier<CacheInvalidator<Long, Long>> invalidator) {
+        this(numberOfSets, entriesPerSet, CacheInvalidatorAdapter.factory(invalidator));
+    }
+
+    /**
+     * ctor with a cache invalidation strategy covering all sets
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     */
+    public LongLongSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<Long, Long> invalidator) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy and a set index function
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     */
+    public LongLongSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<Long, Long> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        super(numberOfSets, entriesPerSet, invalidator, setIndexer);
+
+        this.keys = new long[capacity()];
+        this.values = new long[capacity()];
+    }
+
+    @Override
+    Long keyAt(final int slot) {
+        return this.keys[slot];
+    }
+
+    @Override
+    Long valueAt(final int slot) {
+        return this.values[slot];
+    }
+
+    @Override
+    void clearSlot(final int slot) {
+        // Nothing referenced; the occupancy bit is all that marks a slot live
+    }
+
+    @Override
+    void clearSlots(final int from, final int to) {
+    }
+
+    /**
+     * The hash of a key, matching Long.hashCode() so that keys land in the same sets as in a
+     * SetAssociativeCache of Longs.
+     */
+    private static int hash(final long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Return the way within a set holding a given key
+     * @param set to search
+     * @param hash pre-computed hash of the key
+     * @param key given
+     * @return way found or -1
+     */
+    private int findWay(final int set, final int hash, final long key) {
+        final int base = set * this.entriesPerSet;
+        final byte tag = tagFor(hash);
+
+        for (int word = 0; word < this.wordsPerSet; ++word) {
+            for (long bits = candidates(set, word, tag); bits != 0; bits &= bits - 1) {
+                final int way = (word << 6) + Long.numberOfTrailingZeros(bits);
+
+                if (this.keys[base + way] == key) {
+                    return way;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean containsKey(final long key) {
+        final int hash = hash(key);
+
+        return findWay(setForHash(hash), hash, key) >= 0;
+    }
+
+    /**
+     * @param key to look up
+     * @param defaultValue returned if the key isn't cached
+     * @return the cached value, or defaultValue
+     */
+    public long get(final long key, final long defaultValue) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way >= 0) {
+            this.invalidator.onHit(set, way);
+            return this.values[set * this.entriesPerSet + way];
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Cache a value, evicting an entry of the key's set if it is full.
+     * @param key to cache
+     * @param value to cache
+     */
+    public void put(final long key, final long value) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int base = set * this.entriesPerSet;
+        final int existing = findWay(set, hash, key);
+
+        if (existing >= 0) {
+            this.values[base + existing] = value;
+            this.invalidator.onUpdate(set, existing);
+
+            return;
+        }
+
+        final int way = claimWay(set, hash);
+        if (way < 0) {
+            // Not admitted by the invalidator
+            return;
+        }
+
+        this.keys[base + way] = key;
+        this.values[base + way] = value;
+
+        this.invalidator.onInsert(set, way);
+    }
+
+    /**
+     * Remove a cache entry by key
+     *
+     * @param key to remove from the cache
+     * @return true if the key was cached
+     */
+    public boolean remove(final long key) {
+        final int hash = hash(key);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way < 0) {
+            return false;
+        }
+
+        removeWay(set, way);
+
+        return true;
+    }
+}
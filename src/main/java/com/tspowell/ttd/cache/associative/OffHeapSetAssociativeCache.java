@@ -0,0 +1,311 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An N-way set-associative cache that keeps its values off-heap.
+ *
+ * Every slot owns a fixed-size region of direct memory: a 4-byte length followed by up to maxValueBytes of
+ * serialized value. Regions are laid out in set and way order, like the slot arrays, and whole sets are packed
+ * into direct ByteBuffers of at most 2GB each, so a cache can be larger than one buffer. The memory is
+ * allocated up front, and a value that doesn't fit its slot is rejected. A value is serialized on-heap before
+ * the cache is changed, so a serializer that throws leaves the cache as it was.
+ *
+ * Keys stay on-heap, with the hashes and fingerprint tags, so probes never read direct memory.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ */
+public class OffHeapSetAssociativeCache<K, V> extends SetAssociativeTable<K, V> {
+    private static final int LENGTH_BYTES = 4;
+
+    private final ValueSerializer<V> serializer;
+    private final Object[] keys;
+    private final int maxValueBytes;
+    private final int slotBytes;
+    private final int setsPerBuffer;
+    private final ByteBuffer[] buffers;
+
+    // Holds a value while it is serialized; grown up to maxValueBytes on demand
+    private ByteBuffer scratch = ByteBuffer.allocate(0);
+
+    /**
+     * ctor
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param maxValueBytes largest serialized value a slot can hold
+     * @param serializer converts values to and from bytes
+     */
+    public OffHeapSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final int maxValueBytes,
+            final ValueSerializer<V> serializer) {
+        this(numberOfSets, entriesPerSet, maxValueBytes, serializer, IndexedLRUInvalidator::new, SetIndexers.MODULO);
+    }
+
+    /**
+     * ctor with a cache invalidation strategy and a set index function
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param maxValueBytes largest serialized value a slot can hold
+     * @param serializer converts values to and from bytes
+     * @param invalidator creates the invalidator for the geometry of this cache
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     */
+    public OffHeapSetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final int maxValueBytes,
+            final ValueSerializer<V> serializer,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        super(numberOfSets, entriesPerSet, invalidator, setIndexer);
+
+        final long bytesPerSet = (long) entriesPerSet * (LENGTH_BYTES + (long) maxValueBytes);
+        if (maxValueBytes < 0 || bytesPerSet > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A set must fit in one buffer of at most 2GB.");
+        }
+
+        this.serializer = serializer;
+        this.keys = new Object[capacity()];
+        this.maxValueBytes = maxValueBytes;
+        this.slotBytes = LENGTH_BYTES + maxValueBytes;
+        this.setsPerBuffer = (int) Math.min(numberOfSets, Integer.MAX_VALUE / Math.max(1, bytesPerSet));
+
+        this.buffers = new ByteBuffer[(numberOfSets + this.setsPerBuffer - 1) / this.setsPerBuffer];
+        for (int i = 0; i < this.buffers.length; ++i) {
+            final int sets = Math.min(this.setsPerBuffer, numberOfSets - i * this.setsPerBuffer);
+            this.buffers[i] = ByteBuffer.allocateDirect((int) (sets * bytesPerSet));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    K keyAt(final int slot) {
+        return (K) this.keys[slot];
+    }
+
+    @Override
+    V valueAt(final int slot) {
+        return this.serializer.read(view(slot / this.entriesPerSet, slot % this.entriesPerSet));
+    }
+
+    @Override
+    void clearSlot(final int slot) {
+        this.keys[slot] = null;
+    }
+
+    @Override
+    void clearSlots(final int from, final int to) {
+        Arrays.fill(this.keys, from, to, null);
+    }
+
+    private ByteBuffer buffer(final int set) {
+        return this.buffers[set / this.setsPerBuffer];
+    }
+
+    /**
+     * @return the offset of a slot region within the buffer of its set
+     */
+    private int offset(final int set, final int way) {
+        return ((set % this.setsPerBuffer) * this.entriesPerSet + way) * this.slotBytes;
+    }
+
+    /**
+     * @return a read-only view of the value bytes of an occupied slot
+     */
+    private ByteBuffer view(final int set, final int way) {
+        final ByteBuffer buffer = buffer(set);
+        final int offset = offset(set, way);
+        final ByteBuffer view = buffer.asReadOnlyBuffer();
+
+        // Cast for Java 8, where the Buffer methods don't return ByteBuffer
+        ((Buffer) view).limit(offset + LENGTH_BYTES + buffer.getInt(offset));
+        ((Buffer) view).position(offset + LENGTH_BYTES);
+
+        return view.slice();
+    }
+
+    /**
+     * Compare a slot with a key for equality.
+     * The slot must be occupied, and its fingerprint must match the key's.
+     * @param slot the proposed slot
+     * @param hash the target hash
+     * @param key the target key
+     * @return true if the key is equal to the slot key.
+     */
+    private boolean isMatch(final int slot, final int hash, final Object key) {
+        final Object slotKey = this.keys[slot];
+
+        return slotKey == key ||
+                (this.hashes[slot] == hash && slotKey.equals(key));
+    }
+
+    /**
+     * Return the way within a set holding a given key
+     * @param set to search
+     * @param hash pre-computed hash of the key
+     * @param key given
+     * @return way found or -1
+     */
+    private int findWay(final int set, final int hash, final Object key) {
+        final int base = set * this.entriesPerSet;
+        final byte tag = tagFor(hash);
+
+        for (int word = 0; word < this.wordsPerSet; ++word) {
+            for (long bits = candidates(set, word, tag); bits != 0; bits &= bits - 1) {
+                final int way = (word << 6) + Long.numberOfTrailingZeros(bits);
+
+                if (isMatch(base + way, hash, key)) {
+                    return way;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public boolean containsKey(final Object key) {
+        final int hash = key.hashCode();
+
+        return findWay(setForHash(hash), hash, key) >= 0;
+    }
+
+    /**
+     * @param key to look up
+     * @return a deserialized copy of the cached value, or null
+     */
+    public V get(final Object key) {
+        final ByteBuffer view = getView(key);
+
+        return view == null ? null : this.serializer.read(view);
+    }
+
+    /**
+     * Look up the serialized bytes of a value without copying them.
+     * The view reads the slot in place: it is only valid until the key is updated, removed or evicted.
+     * @param key to look up
+     * @return a read-only view of the value bytes, or null
+     */
+    public ByteBuffer getView(final Object key) {
+        final int hash = key.hashCode();
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way < 0) {
+            return null;
+        }
+
+        this.invalidator.onHit(set, way);
+
+        return view(set, way);
+    }
+
+    /**
+     * Cache a value, evicting an entry of the key's set if it is full.
+     * @param key to cache
+     * @param value to cache
+     * @throws IllegalArgumentException if the serialized value is larger than a slot
+     */
+    public void put(final K key, final V value) {
+        final int length = this.serializer.serializedSize(value);
+        if (length < 0 || length > this.maxValueBytes) {
+            throw new IllegalArgumentException(
+                    "A value of " + length + " bytes does not fit a slot of " + this.maxValueBytes + " bytes.");
+        }
+
+        final ByteBuffer serialized = serialize(value, length);
+
+        final int hash = key.hashCode();
+        final int set = setForHash(hash);
+        final int existing = findWay(set, hash, key);
+
+        if (existing >= 0) {
+            write(set, existing, serialized);
+            this.invalidator.onUpdate(set, existing);
+
+            return;
+        }
+
+        final int way = claimWay(set, hash);
+        if (way < 0) {
+            // Not admitted by the invalidator
+            return;
+        }
+
+        this.keys[set * this.entriesPerSet + way] = key;
+        write(set, way, serialized);
+
+        this.invalidator.onInsert(set, way);
+    }
+
+    /**
+     * Serialize a value into the scratch buffer.
+     * @return the scratch buffer, limited to the value's bytes
+     */
+    private ByteBuffer serialize(final V value, final int length) {
+        if (this.scratch.capacity() < length) {
+            final long grown = Math.max(length, 2L * this.scratch.capacity());
+            this.scratch = ByteBuffer.allocate((int) Math.min(this.maxValueBytes, grown));
+        }
+
+        final ByteBuffer target = this.scratch;
+
+        ((Buffer) target).clear();
+        ((Buffer) target).limit(length);
+        this.serializer.write(value, target);
+        ((Buffer) target).rewind();
+
+        return target;
+    }
+
+    private void write(final int set, final int way, final ByteBuffer serialized) {
+        final ByteBuffer buffer = buffer(set);
+        final int offset = offset(set, way);
+        final int length = serialized.remaining();
+        final ByteBuffer target = buffer.duplicate();
+
+        ((Buffer) target).position(offset + LENGTH_BYTES);
+        target.put(serialized);
+
+        buffer.putInt(offset, length);
+    }
+
+    /**
+     * Remove a cache entry by key
+     *
+     * @param key to remove from the cache
+     * @return true if the key was cached
+     */
+    public boolean remove(final Object key) {
+        final int hash = key.hashCode();
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        if (way < 0) {
+            return false;
+        }
+
+        removeWay(set, way);
+
+        return true;
+    }
+
+    /**
+     * @return the direct memory reserved for values, in bytes
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (final ByteBuffer buffer : this.buffers) {
+            bytes += buffer.capacity();
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,68 @@
+package com.tspowell.ttd.cache.associative;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * A bounded, lossy buffer of the slots that were hit, filled by any number of readers and drained by one
+ * thread at a time.
+ *
+ * Readers claim a cell with a CAS on the write counter and publish the slot with a lazy store; if the buffer
+ * is full or the CAS loses a race, the hit is dropped instead of retried. The drainer owns the read counter.
+ * Slots are stored plus one, so that an empty cell (0) tells the drainer that a claimed cell isn't published
+ * yet.
+ */
+final class ReadBuffer {
+    static final int SIZE = 32;
+    private static final int MASK = SIZE - 1;
+
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicIntegerArray cells = new AtomicIntegerArray(SIZE);
+
+    // Only written by the drainer, under the stripe's write lock
+    private volatile long readCount = 0;
+
+    /**
+     * Record a hit, unless the buffer is full or contended.
+     * @param slot that was hit
+     * @return true if the buffer is worth draining
+     */
+    boolean offer(final int slot) {
+        final long tail = this.writeCount.get();
+        final long pending = tail - this.readCount;
+
+        if (pending >= SIZE) {
+            return true;
+        }
+
+        if (this.writeCount.compareAndSet(tail, tail + 1)) {
+            this.cells.lazySet((int) (tail & MASK), slot + 1);
+        }
+
+        return pending + 1 >= SIZE / 2;
+    }
+
+    /**
+     * Pass the recorded hits to the consumer, oldest first. Must be called by one thread at a time.
+     * @param consumer of hit slots
+     */
+    void drainTo(final IntConsumer consumer) {
+        final long tail = this.writeCount.get();
+
+        while (this.readCount < tail) {
+            final int index = (int) (this.readCount & MASK);
+            final int slot = this.cells.get(index);
+
+            // Claimed, but not yet published; pick it up next time
+            if (slot == 0) {
+                break;
+            }
+
+            this.cells.lazySet(index, 0);
+            this.readCount = this.readCount + 1;
+
+            consumer.accept(slot - 1);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.tspowell.ttd.cache.associative;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * When a LoadingSetAssociativeCache reloads an entry in the background.
+ *
+ * An entry becomes due for refresh a fixed time after it was written. A read of a due entry still returns
+ * the cached value, and schedules a reload on the executor; the reloaded value replaces the entry, unless
+ * it changed meanwhile. A reload that fails leaves the entry as it is, so the next read tries again.
+ *
+ * With early refresh (XFetch), a read may also refresh an entry before it is due, with a probability that
+ * grows as the entry ages and as loads get slower: a read refreshes if
+ * {@code age - beta * loadTime * ln(random) >= refreshAfter}. Reads of a popular key then trigger its
+ * reload at a random point shortly before the deadline, instead of all at the deadline. A beta of 1 is the
+ * usual choice; larger values refresh earlier.
+ */
+public final class RefreshPolicy {
+    private final long refreshNanos;
+    private final double beta;
+    private final Executor executor;
+    private final LongSupplier ticker;
+
+    private RefreshPolicy(
+            final long refreshNanos, final double beta, final Executor executor, final LongSupplier ticker) {
+        this.refreshNanos = refreshNanos;
+        this.beta = beta;
+        this.executor = executor;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Refresh an entry on the first read after it is a given time old.
+     * @param duration time after a write until the entry is due
+     * @param unit of the duration
+     * @return the policy
+     */
+    public static RefreshPolicy afterWrite(final long duration, final TimeUnit unit) {
+        return early(duration, unit, 0);
+    }
+
+    /**
+     * Refresh an entry on a read after it is a given time old, or probabilistically before.
+     * @param duration time after a write until the entry is due
+     * @param unit of the duration
+     * @param beta how early to refresh; 0 is the same as afterWrite()
+     * @return the policy
+     */
+    public static RefreshPolicy early(final long duration, final TimeUnit unit, final double beta) {
+        if (duration < 0 || !(beta >= 0)) {
+            throw new IllegalArgumentException("The refresh time and beta must not be negative.");
+        }
+
+        return new RefreshPolicy(unit.toNanos(duration), beta, ForkJoinPool.commonPool(), System::nanoTime);
+    }
+
+    /**
+     * @param executor runs the reloads, instead of the common ForkJoinPool
+     * @return a copy of this policy with the executor
+     */
+    public RefreshPolicy executor(final Executor executor) {
+        return new RefreshPolicy(this.refreshNanos, this.beta, executor, this.ticker);
+    }
+
+    /**
+     * @param ticker current time in nanoseconds, instead of System.nanoTime()
+     * @return a copy of this policy with the ticker
+     */
+    public RefreshPolicy ticker(final LongSupplier ticker) {
+        return new RefreshPolicy(this.refreshNanos, this.beta, this.executor, ticker);
+    }
+
+    Executor executor() {
+        return this.executor;
+    }
+
+    LongSupplier ticker() {
+        return this.ticker;
+    }
+
+    /**
+     * @param age time since the entry was written
+     * @param loadNanos typical time to load an entry
+     * @return true if a read of the entry should refresh it
+     */
+    boolean isDue(final long age, final long loadNanos) {
+        if (age >= this.refreshNanos) {
+            return true;
+        }
+
+        if (this.beta == 0) {
+            return false;
+        }
+
+        // 1 - nextDouble() is in (0, 1], so the logarithm is finite
+        final double lead = -this.beta * loadNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+
+        return age + lead >= this.refreshNanos;
+    }
+}
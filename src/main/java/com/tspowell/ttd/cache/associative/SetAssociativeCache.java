@@ -2,24 +2,34 @@ package com.tspowell.ttd.cache.associative;
 
 import com.tspowell.ttd.cache.UnsettableEntry;
 import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
-import com.tspowell.ttd.cache.invalidation.InvalidationException;
-import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
 
 import javax.cache.Cache;
-import java.lang.reflect.Array;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An N-way set-associative cache.
  *
- * A fixed-size bucket array points to bucket sets with a member cache invalidator.
+ * A fixed number of sets, sharing one cache invalidator that is told about slots by set and way.
  * - For an LRU invalidator, the head designates the least recently used object. The tail is the most recently used.
  * - Only get(), put() and remove() affect the cache invalidation list.
+ * - Per-set CacheInvalidators are still supported, through a CacheInvalidatorAdapter.
  *
- * Because we can't take advantage of contiguously allocated blocks of cache entries, we are pre-allocating
- * the cache entries and updating the pointers to the key/value/hash when setting a value. The entries are
- * maintained for the lifetime of the cache, and iterators must allocate new entries.
+ * Slots are stored struct-of-arrays style: the hash, key and value of every slot live in flat parallel arrays
+ * addressed by {@code set * entriesPerSet + way}, so a probe scans contiguous memory and there is no per-slot
+ * object. Every set keeps an occupancy bitmap of one bit per way (one long for up to 64 ways), so probes,
+ * free-slot searches and iteration jump straight to live or free ways. Like the tag array of a hardware cache,
+ * a byte array holds an 8-bit fingerprint of every slot's hash; a probe compares fingerprints first and only
+ * reads the hash and key of a slot whose fingerprint matches. The fingerprints of a set are contiguous, so
+ * on Java 17+ a TagMatcher can compare them with vector instructions. Iterators must allocate new entries;
+ * cursor(), forEachEntry() and forEach() read the slots in place.
  *
  * TODO:
  * Normally, I would implement the JCache API (and I have included it as a dependency
@@ -29,14 +39,18 @@ import java.util.function.Supplier;
  * @param <K> key class
  * @param <V> value class
  */
-public class SetAssociativeCache<K, V>
+public class SetAssociativeCache<K, V> extends SetAssociativeTable<K, V>
         implements Map<K, V>, Iterable<Cache.Entry<K, V>> {
-    private final Supplier<CacheInvalidator<K, V>> invalidatorSupplier;
-    private final int numberOfSets;
-    private final int entriesPerSet;
-    private int size = 0;
+    private final Object[] keys;
+    private final Object[] values;
 
-    private Bucket[] buckets;
+    // Live views, created on first use
+    private Set<K> keySet;
+    private Collection<V> valueView;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    // Scratch space of getAll(), created on first use
+    private Batch batch;
 
     /**
      * ctor
@@ -46,40 +60,51 @@ public class SetAssociativeCache<K, V>
     public SetAssociativeCache(
             final int numberOfSets,
             final int entriesPerSet) {
-        this.invalidatorSupplier = LRUInvalidator::new;
-        this.numberOfSets = numberOfSets;
-        this.entriesPerSet = entriesPerSet;
-
-        initialize();
+        this(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new);
     }
 
     /**
-     * ctor with a cache invalidation strategy
+     * ctor with a per-set cache invalidation strategy
      * @param numberOfSets number of sets
      * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator of each set
      */
     public SetAssociativeCache(
             final int numberOfSets,
             final int entriesPerSet,
             final Supplier<CacheInvalidator<K, V>> invalidator) {
-        this.invalidatorSupplier = invalidator;
-        this.numberOfSets = numberOfSets;
-        this.entriesPerSet = entriesPerSet;
-
-        initialize();
+        this(numberOfSets, entriesPerSet, CacheInvalidatorAdapter.factory(invalidator));
     }
 
-    @SuppressWarnings("unchecked")
-    private void initialize() {
-        if (this.numberOfSets < 1 || this.entriesPerSet < 1) {
-            throw new IllegalArgumentException("Must configure at least one set, and one entry per set.");
-        }
+    /**
+     * ctor with a cache invalidation strategy covering all sets
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     */
+    public SetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator) {
+        this(numberOfSets, entriesPerSet, invalidator, SetIndexers.MODULO);
+    }
 
-        this.buckets = (Bucket[]) Array.newInstance(Bucket.class, this.numberOfSets);
+    /**
+     * ctor with a cache invalidation strategy and a set index function
+     * @param numberOfSets number of sets
+     * @param entriesPerSet entries per set (the N in N-Way)
+     * @param invalidator creates the invalidator for the geometry of this cache
+     * @param setIndexer creates the function mapping key hashes to sets, e.g. one of the SetIndexers
+     */
+    public SetAssociativeCache(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        super(numberOfSets, entriesPerSet, invalidator, setIndexer);
 
-        for (int i = 0; i < this.numberOfSets; ++i) {
-            this.buckets[i] = new Bucket();
-        }
+        this.keys = new Object[capacity()];
+        this.values = new Object[capacity()];
     }
 
     @Override
@@ -87,98 +112,208 @@ public class SetAssociativeCache<K, V>
         return new SetAssociativeIterator();
     }
 
+    /**
+     * A spliterator that splits on ranges of sets, and knows the exact size of every split.
+     */
     @Override
-    public int size() {
-        return this.size;
+    public Spliterator<Cache.Entry<K, V>> spliterator() {
+        return new EntrySpliterator(0, this.numberOfSets, size());
     }
 
-    @Override
-    public boolean isEmpty() {
-        return this.size == 0;
+    /**
+     * @return a stream of copies of the entries; parallel streams split on ranges of sets
+     */
+    public Stream<Cache.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
     }
 
+    /**
+     * Replace every value with the result of a function, in set and way order. Like iteration, doesn't affect
+     * the invalidator.
+     * @param function called with the key and value of each entry
+     */
     @Override
-    public boolean containsKey(Object key) {
-        int hash = key.hashCode();
+    public void replaceAll(final BiFunction<? super K, ? super V, ? extends V> function) {
+        replaceAll(0, this.numberOfSets, function);
+    }
 
-        for (final Entry entry : bucketForHash(hash).entries) {
-            if (isMatch(entry, hash, key)) {
-                return true;
-            }
+    /**
+     * Replace every value like replaceAll(), with ranges of sets processed in parallel on the common
+     * ForkJoinPool. The cache must not be otherwise modified until this returns.
+     * @param function called with the key and value of each entry, from several threads at once and in no
+     *                 particular order
+     */
+    public void parallelReplaceAll(final BiFunction<? super K, ? super V, ? extends V> function) {
+        inParallel((fromSet, toSet) -> {
+            replaceAll(fromSet, toSet, function);
+            return 0;
+        });
+    }
+
+    private void replaceAll(
+            final int fromSet,
+            final int toSet,
+            final BiFunction<? super K, ? super V, ? extends V> function) {
+        for (final SlotWalker walker = new SlotWalker(fromSet, toSet); walker.advance(); ) {
+            final int slot = walker.slot();
+            this.values[slot] = function.apply(keyAt(slot), valueAt(slot));
         }
+    }
 
-        return false;
+    @Override
+    @SuppressWarnings("unchecked")
+    K keyAt(final int slot) {
+        return (K) this.keys[slot];
     }
 
     @Override
-    public boolean containsValue(Object value) {
-        for (final Bucket bucket : this.buckets) {
-            for (final Entry entry : bucket.entries) {
-                if (entry.isSet() &&
-                        (entry.getValue() == value ||
-                                entry.getValue().equals(value))) {
-                    return true;
-                }
-            }
-        }
+    @SuppressWarnings("unchecked")
+    V valueAt(final int slot) {
+        return (V) this.values[slot];
+    }
 
-        return false;
+    @Override
+    void clearSlot(final int slot) {
+        this.keys[slot] = null;
+        this.values[slot] = null;
     }
 
-    private Bucket bucketForHash(int hashCode) {
-        return this.buckets[Math.abs(hashCode) % this.numberOfSets];
+    @Override
+    void clearSlots(final int from, final int to) {
+        Arrays.fill(this.keys, from, to, null);
+        Arrays.fill(this.values, from, to, null);
     }
 
-    private int indexForBucket(int hashCode) {
-        return Math.abs(hashCode) % this.entriesPerSet;
+    @Override
+    public boolean containsKey(Object key) {
+        final int hash = key.hashCode();
+
+        return findWay(setForHash(hash), hash, key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (final SlotWalker walker = new SlotWalker(); walker.advance(); ) {
+            final Object slotValue = this.values[walker.slot()];
+
+            if (slotValue == value || (slotValue != null && slotValue.equals(value))) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
-     * Compare a set entry with a key for equality.
-     * @param entry the proposed entry
+     * Compare a slot with a key for equality.
+     * The slot must be occupied, and its fingerprint must match the key's.
+     * @param slot the proposed slot
      * @param hash the target hash
      * @param key the target key
-     * @return true if the key is equal to the entry key.
+     * @return true if the key is equal to the slot key.
      */
-    private boolean isMatch(final Entry entry, final int hash, final Object key) {
-        return entry.isSet() &&
-                (entry.getKey() == key ||
-                (entry.hash() == hash && entry.getKey().equals(key)));
+    private boolean isMatch(final int slot, final int hash, final Object key) {
+        final Object slotKey = this.keys[slot];
+
+        return slotKey == key ||
+                (this.hashes[slot] == hash && slotKey.equals(key));
     }
 
     /**
-     * Return the entry from the set for a given key
+     * Return the way within a set holding a given key
+     * @param set to search
+     * @param hash pre-computed hash of the key
      * @param key given
+     * @return way found or -1
+     */
+    private int findWay(final int set, final int hash, final Object key) {
+        return findWay(set, hash, key, candidates(set, 0, tagFor(hash)));
+    }
+
+    /**
+     * Return the way within a set holding a given key, given the candidates of the first occupancy word
+     * @param set to search
      * @param hash pre-computed hash of the key
-     * @return Entry found or null
+     * @param key given
+     * @param firstCandidates candidates(set, 0, tagFor(hash))
+     * @return way found or -1
      */
-    private Entry getEntry(Object key, int hash) {
-        final Bucket bucket = bucketForHash(hash);
-        final int startIndex = indexForBucket(hash);
-        int index = startIndex;
-
-        do {
-            final Entry entry = bucket.entries[index];
-            if (isMatch(entry, hash, key)) {
-                bucket.touch(entry);
-                return entry;
+    private int findWay(final int set, final int hash, final Object key, final long firstCandidates) {
+        final int base = set * this.entriesPerSet;
+        long bits = firstCandidates;
+
+        for (int word = 0; ; ) {
+            for (; bits != 0; bits &= bits - 1) {
+                final int way = (word << 6) + Long.numberOfTrailingZeros(bits);
+
+                if (isMatch(base + way, hash, key)) {
+                    return way;
+                }
             }
 
-            if (++index == this.entriesPerSet) {
-                index = 0;
+            if (++word == this.wordsPerSet) {
+                return -1;
             }
-        } while (index != startIndex);
 
-        return null;
+            bits = candidates(set, word, tagFor(hash));
+        }
+    }
+
+    /**
+     * Find the slot of a key without changing anything: no set is reclaimed and the invalidator isn't told.
+     * Doesn't fail if a writer changes the cache concurrently, but may then return a wrong slot, so
+     * lock-free readers must validate what they read.
+     * @param key to find
+     * @param hash of the key
+     * @return the slot holding the key, or -1
+     */
+    int peekSlot(final Object key, final int hash) {
+        final int set = this.setIndexer.setIndex(hash);
+        if (!isLive(set)) {
+            return -1;
+        }
+
+        final int base = set * this.entriesPerSet;
+        final byte tag = tagFor(hash);
+
+        for (int word = 0; word < this.wordsPerSet; ++word) {
+            for (long bits = candidates(set, word, tag); bits != 0; bits &= bits - 1) {
+                final int slot = base + (word << 6) + Long.numberOfTrailingZeros(bits);
+                final Object slotKey = this.keys[slot];
+
+                if (slotKey == key || (this.hashes[slot] == hash && slotKey != null && slotKey.equals(key))) {
+                    return slot;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Report a deferred hit on a slot found by peekSlot(), if the slot is still occupied. The slot may have been
+     * reused by another key since; that key gets the hit instead.
+     * @param slot found
+     */
+    void touchSlot(final int slot) {
+        final int set = slot / this.entriesPerSet;
+        final int way = slot % this.entriesPerSet;
+
+        if (isLive(set) && isOccupied(set, way)) {
+            this.invalidator.onHit(set, way);
+        }
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public V get(Object key) {
         final int hash = key.hashCode();
-        final Entry entry = getEntry(key, hash);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
 
-        if (entry != null) {
-            return entry.getValue();
+        if (way >= 0) {
+            this.invalidator.onHit(set, way);
+            return (V) this.values[set * this.entriesPerSet + way];
         }
 
         return null;
@@ -186,64 +321,37 @@ public class SetAssociativeCache<K, V>
 
     @Override
     public V put(K key, V value) {
-        int hash = key.hashCode();
-        final Bucket bucket = bucketForHash(hash);
-
-        final int startIndex = indexForBucket(hash);
-        int index = startIndex;
-        SetAssociativeCache.Entry lastUnset = null;
-
-        if (bucket.size == this.entriesPerSet) {
-            invalidateAndCount(bucket);
-        }
-
-        do {
-            final Entry entry = bucket.entries[index];
-            if (isMatch(entry, hash, key)) {
-                bucket.touch(entry);
-                final V oldValue = entry.getValue();
-                entry.setValue(value);
-                bucket.touch(entry);
+        return put(key, value, key.hashCode());
+    }
 
-                return oldValue;
+    @SuppressWarnings("unchecked")
+    private V put(final K key, final V value, final int hash) {
+        final int set = setForHash(hash);
+        final int base = set * this.entriesPerSet;
+        final int existing = findWay(set, hash, key);
 
-            } else if (!entry.isSet()) {
-                lastUnset = entry;
-            }
+        if (existing >= 0) {
+            final V oldValue = (V) this.values[base + existing];
+            this.values[base + existing] = value;
+            this.invalidator.onUpdate(set, existing);
 
-            if (++index == this.entriesPerSet) {
-                index = 0;
-            }
-        } while (index != startIndex);
+            return oldValue;
+        }
 
-        lastUnset.setKey(key);
-        lastUnset.setValue(value);
-        lastUnset.setHash(hash);
+        final int way = claimWay(set, hash);
+        if (way < 0) {
+            // Not admitted by the invalidator
+            return value;
+        }
 
-        bucket.touch(lastUnset);
+        this.keys[base + way] = key;
+        this.values[base + way] = value;
 
-        bucket.size++;
-        this.size++;
+        this.invalidator.onInsert(set, way);
 
         return value;
     }
 
-    /**
-     * Invalidate the LRU item in this bucket and resize
-     *
-     * @param bucket the bucket to remove one or more cache items from, according to the algorithm for this
-     *               particular cache instance.
-     */
-    private void invalidateAndCount(final Bucket bucket) {
-        boolean removed = bucket.invalidate();
-
-        if (removed) {
-            this.size--;
-        } else {
-            throw new InvalidationException("Could not invalidate the bucket");
-        }
-    }
-
     /**
      * Remove a cache entry by key
      *
@@ -251,175 +359,375 @@ public class SetAssociativeCache<K, V>
      * @return the previous value stored at that key
      */
     @Override
+    @SuppressWarnings("unchecked")
     public V remove(Object key) {
         final int hash = key.hashCode();
-        final Bucket bucket = bucketForHash(hash);
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
 
-        for (final Entry entry : bucket.entries) {
-            if (isMatch(entry, hash, key)) {
-                this.size--;
-                final V prevValue = entry.getValue();
-                bucket.remove(entry);
-
-                return prevValue;
-            }
+        if (way < 0) {
+            return null;
         }
 
-        return null;
+        final V prevValue = (V) this.values[set * this.entriesPerSet + way];
+        removeWay(set, way);
+
+        return prevValue;
     }
 
+    /**
+     * Hash every key up front, and put them one set at a time, in the map's order within a set. Sets are
+     * evicted independently, so the result is the same as putting the entries one by one.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public void putAll(final Map<? extends K, ? extends V> m) {
+        final Object[] keys = new Object[m.size()];
+        final Object[] values = new Object[keys.length];
+        final int[] hashes = new int[keys.length];
+        final long[] order = new long[keys.length];
+
+        int i = 0;
         for (final Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            hashes[i] = keys[i].hashCode();
+            order[i] = (long) this.setIndexer.setIndex(hashes[i]) << 32 | i;
+            ++i;
+        }
+
+        Arrays.sort(order);
+
+        for (final long setAndIndex : order) {
+            final int index = (int) setAndIndex;
+            put((K) keys[index], (V) values[index], hashes[index]);
         }
     }
 
     /**
-     * Mark all entries in all buckets as unset.
-     * Remove the iterable pointers from the buckets.
+     * Look up many keys at once.
+     * @param keys to look up
+     * @return the values of the keys that are cached, in the order of the keys
      */
-    @Override
-    public void clear() {
-        for (final Bucket bucket : this.buckets) {
-            for (final Entry entry : bucket.entries) {
-                entry.unset();
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getAll(final Iterable<? extends K> keys) {
+        final List<K> keyList = new ArrayList<>();
+        keys.forEach(keyList::add);
+
+        final K[] keyArray = (K[]) keyList.toArray();
+        final V[] values = (V[]) new Object[keyArray.length];
+        getAll(keyArray, values);
+
+        final Map<K, V> found = new LinkedHashMap<>();
+        for (int i = 0; i < keyArray.length; ++i) {
+            if (values[i] != null) {
+                found.put(keyArray[i], values[i]);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Look up many keys at once, without allocating. The keys are probed a batch at a time and stage by
+     * stage: all sets are found, then all their fingerprints are compared, then all candidate keys; the
+     * memory accesses of one stage don't depend on each other, so their cache misses overlap. The hits
+     * are reported to the invalidator last, in key order.
+     * @param keys to look up
+     * @param values receives the value of each key, or null; at least as long as keys
+     * @return the number of keys found
+     */
+    public int getAll(final K[] keys, final V[] values) {
+        if (values.length < keys.length) {
+            throw new IllegalArgumentException("There must be a value for every key.");
+        }
+
+        if (this.batch == null) {
+            this.batch = new Batch();
+        }
+
+        final Batch batch = this.batch;
+        int hits = 0;
+
+        for (int from = 0; from < keys.length; from += Batch.SIZE) {
+            final int n = Math.min(Batch.SIZE, keys.length - from);
+
+            for (int i = 0; i < n; ++i) {
+                batch.hashes[i] = keys[from + i].hashCode();
+                batch.sets[i] = setForHash(batch.hashes[i]);
+            }
+
+            for (int i = 0; i < n; ++i) {
+                batch.candidates[i] = candidates(batch.sets[i], 0, tagFor(batch.hashes[i]));
+            }
+
+            for (int i = 0; i < n; ++i) {
+                final int way = findWay(batch.sets[i], batch.hashes[i], keys[from + i], batch.candidates[i]);
+
+                batch.ways[i] = way;
+                values[from + i] = way < 0 ? null : valueAt(batch.sets[i] * this.entriesPerSet + way);
+            }
+
+            for (int i = 0; i < n; ++i) {
+                if (batch.ways[i] >= 0) {
+                    this.invalidator.onHit(batch.sets[i], batch.ways[i]);
+                    ++hits;
+                }
             }
         }
 
-        this.size = 0;
+        return hits;
     }
 
     /**
-     * Create a set of all keys in the cache.
-     * @return a hash set containing the keys.
+     * Walks the slots in place, rather than copying every entry like entrySet().
      */
     @Override
-    public Set<K> keySet() {
-        final Set<K> set = new HashSet<>();
+    public void forEach(final BiConsumer<? super K, ? super V> action) {
+        forEachEntry(action);
+    }
 
-        for (final Cache.Entry<K, V> entry : this) {
-            set.add(entry.getKey());
+    /**
+     * A live view of the keys, backed by the cache like the views of a HashMap.
+     * Removing a key from the view removes its entry from the cache; the view doesn't support adding.
+     * @return the key view
+     */
+    @Override
+    public Set<K> keySet() {
+        Set<K> view = this.keySet;
+        if (view == null) {
+            view = new KeySet();
+            this.keySet = view;
         }
 
-        return set;
+        return view;
     }
 
     /**
-     * Create a list of all values in the cache.
-     * @return an arraylist containing the values.
+     * A live view of the values, backed by the cache like the views of a HashMap.
+     * @return the value view
      */
     @Override
     public Collection<V> values() {
-        final List<V> l = new ArrayList<>();
-
-        for (final Cache.Entry<K, V> entry : this) {
-            l.add(entry.getValue());
+        Collection<V> view = this.valueView;
+        if (view == null) {
+            view = new Values();
+            this.valueView = view;
         }
 
-        return l;
+        return view;
     }
 
+    /**
+     * A live view of the entries, backed by the cache like the views of a HashMap.
+     * Setting the value of an entry returned by the view updates the cache.
+     * @return the entry view
+     */
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Map.Entry<K, V>> entrySet() {
-        final Set<Map.Entry<K, V>> set = new HashSet<>();
-
-        for (Cache.Entry<K, V> entry : this) {
-            set.add(new Entry((SetAssociativeCache.Entry)entry));
+        Set<Map.Entry<K, V>> view = this.entrySet;
+        if (view == null) {
+            view = new EntrySet();
+            this.entrySet = view;
         }
 
-        return set;
+        return view;
     }
 
-    public class SetAssociativeIterator implements Iterator<Cache.Entry<K, V>> {
-        private int bucketIdx;
-        private int entryIdx;
+    /**
+     * @return the slot holding the key, or -1. Doesn't affect the invalidator.
+     */
+    private int findSlot(final Object key) {
+        final int hash = key.hashCode();
+        final int set = setForHash(hash);
+        final int way = findWay(set, hash, key);
+
+        return way < 0 ? -1 : set * this.entriesPerSet + way;
+    }
 
-        public SetAssociativeIterator() {
-            this.bucketIdx = 0;
-            this.entryIdx = 0;
+    private final class KeySet extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new SlotIterator<K>() {
+                @Override
+                K element(final int slot, final int way) {
+                    return keyAt(slot);
+                }
+            };
         }
 
         @Override
-        public boolean hasNext() {
-            getNextBucket();
+        public int size() {
+            return SetAssociativeCache.this.size();
+        }
 
-            // don't need to check the entries Idx because that is checked by getNextBucket()
-            return this.bucketIdx < numberOfSets;
+        @Override
+        public boolean contains(final Object o) {
+            return containsKey(o);
         }
 
         @Override
-        public Cache.Entry<K, V> next() {
-            getNextBucket();
+        public boolean remove(final Object o) {
+            final int slot = findSlot(o);
 
-            // return a copy of this entry, as the entry in the bucket will be updated in-place
-            final Entry entry = new Entry(current());
-            this.entryIdx++;
+            if (slot < 0) {
+                return false;
+            }
 
-            return entry;
-        }
+            removeWay(slot / entriesPerSet, slot % entriesPerSet);
 
-        private Entry current() {
-            return buckets[this.bucketIdx].entries[this.entryIdx];
+            return true;
         }
 
-        private void getNextBucket() {
-            while (bucketIdx < buckets.length &&
-                    (entryIdx >= entriesPerSet || !current().isSet())) {
+        @Override
+        public void clear() {
+            SetAssociativeCache.this.clear();
+        }
+    }
 
-                if (this.entryIdx < entriesPerSet) {
-                    entryIdx++;
-                } else {
-                    bucketIdx++;
-                    entryIdx = 0;
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new SlotIterator<V>() {
+                @Override
+                V element(final int slot, final int way) {
+                    return valueAt(slot);
                 }
-            }
+            };
+        }
+
+        @Override
+        public int size() {
+            return SetAssociativeCache.this.size();
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            SetAssociativeCache.this.clear();
         }
     }
 
-    private class Bucket {
-        private final Entry[] entries;
-        private final CacheInvalidator<K, V> invalidator;
-        private int size = 0;
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new SlotIterator<Map.Entry<K, V>>() {
+                @Override
+                Map.Entry<K, V> element(final int slot, final int way) {
+                    return new WriteThroughEntry(keyAt(slot), valueAt(slot), hashes[slot]);
+                }
+            };
+        }
 
-        @SuppressWarnings("unchecked")
-        protected Bucket() {
-            this.entries = (Entry[]) Array.newInstance(Entry.class, entriesPerSet);
+        @Override
+        public int size() {
+            return SetAssociativeCache.this.size();
+        }
 
-            for (int i = 0; i < entriesPerSet; ++i) {
-                this.entries[i] = new Entry();
+        /**
+         * @return the slot holding the entry's key and value, or -1
+         */
+        private int findEntry(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return -1;
             }
 
-            this.invalidator = invalidatorSupplier.get();
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            final int slot = findSlot(entry.getKey());
+
+            return slot >= 0 && Objects.equals(values[slot], entry.getValue()) ? slot : -1;
         }
 
-        boolean invalidate() {
-            boolean removed = invalidator.invalidate();
-            if (removed) {
-                this.size--;
+        @Override
+        public boolean contains(final Object o) {
+            return findEntry(o) >= 0;
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            final int slot = findEntry(o);
+
+            if (slot < 0) {
+                return false;
             }
 
-            return removed;
+            removeWay(slot / entriesPerSet, slot % entriesPerSet);
+
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            SetAssociativeCache.this.clear();
+        }
+    }
+
+    /**
+     * The keys getAll() probes together, stage by stage.
+     */
+    private static final class Batch {
+        static final int SIZE = 16;
+
+        final int[] hashes = new int[SIZE];
+        final int[] sets = new int[SIZE];
+        final long[] candidates = new long[SIZE];
+        final int[] ways = new int[SIZE];
+    }
+
+    /**
+     * An entry of the entry view: a copy whose setValue() also updates the cache.
+     */
+    private final class WriteThroughEntry extends Entry {
+        WriteThroughEntry(final K key, final V value, final int hash) {
+            super(key, value, hash);
+        }
+
+        @Override
+        public V setValue(final V value) {
+            final V oldValue = getValue();
+            super.setValue(value);
+            put(getKey(), value);
+
+            return oldValue;
         }
+    }
 
-        void touch(final Entry entry) {
-            this.invalidator.touch(entry);
+    /**
+     * Splits copies of the entries, like the iterator.
+     */
+    private final class EntrySpliterator extends SlotSpliterator<Cache.Entry<K, V>> {
+        EntrySpliterator(final int fromSet, final int toSet, final long size) {
+            super(fromSet, toSet, size);
         }
 
-        void remove(final Entry entry) {
-            this.invalidator.remove(entry);
-            entry.unset();
-            this.size--;
+        @Override
+        Cache.Entry<K, V> element(final int slot, final int way) {
+            return new Entry(keyAt(slot), valueAt(slot), hashes[slot]);
         }
 
-        int size() {
-            return this.size;
+        @Override
+        SlotSpliterator<Cache.Entry<K, V>> split(final int fromSet, final int toSet, final long size) {
+            return new EntrySpliterator(fromSet, toSet, size);
         }
     }
 
     /**
-     * An associative set entry with previous and next pointers to the older or more recent additions to the set.
+     * Iterates over copies of the entries. remove() removes the last entry returned from the cache.
+     */
+    public class SetAssociativeIterator extends SlotIterator<Cache.Entry<K, V>> {
+        @Override
+        Cache.Entry<K, V> element(final int slot, final int way) {
+            // return a copy of this slot, as the slot will be updated in-place
+            return new Entry(keyAt(slot), valueAt(slot), hashes[slot]);
+        }
+    }
+
+    /**
+     * A copy of an associative set entry, as returned by iteration.
      * Implements a map entry so the cache can be queried like a map.
      */
     public class Entry
@@ -440,13 +748,19 @@ public class SetAssociativeCache<K, V>
             this.isSet = other.isSet();
         }
 
+        protected Entry(final K key, final V value, final int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+            this.isSet = true;
+        }
 
         public int hash() {
             return this.hash;
         }
 
         /**
-         * Remove references to keys/values on the heap, remove pointers to adjacent nodes, and flip the set bit.
+         * Remove references to keys/values on the heap and flip the set bit.
          */
         public void unset() {
             this.key = null;
@@ -484,6 +798,25 @@ public class SetAssociativeCache<K, V>
             this.hash = hash;
         }
 
+        /**
+         * Equal to any map entry with an equal key and value, as specified by Map.Entry.
+         */
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+
+            return Objects.equals(this.key, entry.getKey()) && Objects.equals(this.value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(this.key) ^ Objects.hashCode(this.value);
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         public <T> T unwrap(Class<T> clazz) {
@@ -494,4 +827,4 @@ public class SetAssociativeCache<K, V>
             return (T)this;
         }
     }
-}
\ No newline at end of file
+}
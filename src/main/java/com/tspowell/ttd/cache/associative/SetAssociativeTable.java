@@ -0,0 +1,718 @@
+package com.tspowell.ttd.cache.associative;
+
+import com.tspowell.ttd.cache.CacheCursor;
+import com.tspowell.ttd.cache.invalidation.CacheSlots;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.InvalidationException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * The set/way geometry shared by the set-associative caches.
+ *
+ * Owns everything about a slot except its key and value: the hash, the 8-bit fingerprint tag, the per-set
+ * occupancy bitmaps, the set index function and the invalidator. Slot {@code set * entriesPerSet + way} of a
+ * subclass's key and value arrays belongs to the same way, so keys and values can be stored as objects or
+ * primitives. Subclasses probe for their keys with candidates(), and claim and unset ways through this class
+ * so that the occupancy, the size and the invalidator stay consistent.
+ *
+ * @param <K> key class, as seen by the invalidator
+ * @param <V> value class, as seen by the invalidator
+ */
+abstract class SetAssociativeTable<K, V> {
+    // The fewest sets a bulk operation hands to one task
+    private static final int MINIMUM_PARALLEL_SETS = 256;
+
+    final int numberOfSets;
+    final int entriesPerSet;
+    final int[] hashes;
+    final byte[] tags;
+
+    // Occupancy bitmaps: wordsPerSet longs per set, bit (way & 63) of word (way >>> 6) is set for a live way
+    final int wordsPerSet;
+    final long[] occupancy;
+    private final long lastWordMask;
+
+    // A set is live if its epoch is the cache's; clear() bumps the cache's epoch, and stale sets are reclaimed
+    // on first use. Iteration treats stale sets as empty.
+    private final int[] setEpochs;
+    private int epoch = 0;
+
+    final SetIndexer setIndexer;
+    final IndexedCacheInvalidator<K, V> invalidator;
+    int size = 0;
+
+    SetAssociativeTable(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<K, V> invalidator,
+            final SetIndexer.Factory setIndexer) {
+        if (numberOfSets < 1 || entriesPerSet < 1) {
+            throw new IllegalArgumentException("Must configure at least one set, and one entry per set.");
+        }
+
+        final long capacity = (long) numberOfSets * entriesPerSet;
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Cannot allocate more than " + (Integer.MAX_VALUE - 8) + " entries.");
+        }
+
+        this.numberOfSets = numberOfSets;
+        this.entriesPerSet = entriesPerSet;
+        this.hashes = new int[(int) capacity];
+        this.tags = new byte[(int) capacity];
+        this.wordsPerSet = (entriesPerSet + 63) >>> 6;
+        this.occupancy = new long[numberOfSets * this.wordsPerSet];
+        this.lastWordMask = (entriesPerSet & 63) == 0 ? -1L : (1L << (entriesPerSet & 63)) - 1;
+        this.setEpochs = new int[numberOfSets];
+        this.setIndexer = setIndexer.create(numberOfSets);
+        this.invalidator = invalidator.create(numberOfSets, entriesPerSet, new Slots());
+    }
+
+    /**
+     * @return the key of an occupied slot, as seen by the invalidator
+     */
+    abstract K keyAt(int slot);
+
+    /**
+     * @return the value of an occupied slot, as seen by the invalidator
+     */
+    abstract V valueAt(int slot);
+
+    /**
+     * Drop any references held by a slot that is being unset.
+     */
+    abstract void clearSlot(int slot);
+
+    /**
+     * Drop any references held by a range of slots.
+     * @param from first slot, inclusive
+     * @param to last slot, exclusive
+     */
+    abstract void clearSlots(int from, int to);
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Mark all slots in all sets as unset, in constant time.
+     * The sets are reclaimed lazily, on first use: until then they still reference their old keys and values.
+     */
+    public void clear() {
+        if (this.epoch == Integer.MAX_VALUE) {
+            // Reclaim every set now, so that the epochs can start over
+            for (int set = 0; set < this.numberOfSets; ++set) {
+                reclaim(set);
+            }
+
+            Arrays.fill(this.setEpochs, 0);
+            this.epoch = 0;
+        } else {
+            this.epoch++;
+        }
+
+        this.size = 0;
+    }
+
+    final boolean isLive(final int set) {
+        return this.setEpochs[set] == this.epoch;
+    }
+
+    /**
+     * Empty a set that was cleared: drop its slots and its invalidator state.
+     */
+    private void reclaim(final int set) {
+        final int first = set * this.wordsPerSet;
+
+        if (!this.invalidator.reset(set)) {
+            for (int word = 0; word < this.wordsPerSet; ++word) {
+                for (long bits = this.occupancy[first + word]; bits != 0; bits &= bits - 1) {
+                    this.invalidator.onRemove(set, (word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+
+        clearSlots(set * this.entriesPerSet, (set + 1) * this.entriesPerSet);
+        Arrays.fill(this.occupancy, first, first + this.wordsPerSet, 0L);
+    }
+
+    /**
+     * @return the number of entries the cache can hold
+     */
+    public int capacity() {
+        return this.numberOfSets * this.entriesPerSet;
+    }
+
+    /**
+     * The set that may hold a hash. Every lookup and update goes through here, which reclaims the set
+     * first if the cache was cleared since it was last used.
+     * @param hash of the key
+     * @return a live set
+     */
+    final int setForHash(final int hash) {
+        final int set = this.setIndexer.setIndex(hash);
+
+        if (this.setEpochs[set] != this.epoch) {
+            reclaim(set);
+            this.setEpochs[set] = this.epoch;
+        }
+
+        return set;
+    }
+
+    /**
+     * The fingerprint of a hash. The hash is mixed first, so that the fingerprint is independent of the bits
+     * a set index function takes from the hash.
+     * @param hash of the key
+     * @return an 8-bit fingerprint
+     */
+    static byte tagFor(final int hash) {
+        int h = hash ^ (hash >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+
+        return (byte) (h >>> 24);
+    }
+
+    /**
+     * The ways of one occupancy word of a set that may hold a key: those that are occupied and whose
+     * fingerprint matches.
+     * @param set to search
+     * @param word occupancy word of the set, covering ways [64 * word, 64 * word + 63]
+     * @param tag fingerprint of the key
+     * @return bitmap of candidate ways, relative to the first way of the word
+     */
+    final long candidates(final int set, final int word, final byte tag) {
+        final long occupied = this.occupancy[set * this.wordsPerSet + word];
+        if (occupied == 0) {
+            return 0;
+        }
+
+        final int first = word << 6;
+
+        return TagMatcher.candidates(
+                this.tags, set * this.entriesPerSet + first, Math.min(64, this.entriesPerSet - first), tag, occupied);
+    }
+
+    /**
+     * @param set to search
+     * @return the first unset way of the set, or -1 if the set is full
+     */
+    final int findUnsetWay(final int set) {
+        final int last = this.wordsPerSet - 1;
+
+        for (int word = 0; word <= last; ++word) {
+            final long unset = ~this.occupancy[set * this.wordsPerSet + word] & (word == last ? this.lastWordMask : -1L);
+
+            if (unset != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(unset);
+            }
+        }
+
+        return -1;
+    }
+
+    final boolean isOccupied(final int set, final int way) {
+        return (this.occupancy[set * this.wordsPerSet + (way >>> 6)] & (1L << way)) != 0;
+    }
+
+    /**
+     * Claim a way of a set for a new entry, evicting an entry if the set is full and the invalidator admits
+     * the new entry. The caller stores the key and value in the slot, then reports the insert to the invalidator.
+     *
+     * @param set to insert into
+     * @param hash of the new key
+     * @return the claimed way, or -1 if the new entry wasn't admitted
+     */
+    final int claimWay(final int set, final int hash) {
+        int way = findUnsetWay(set);
+        if (way < 0) {
+            way = invalidateAndCount(set, hash);
+
+            if (way < 0) {
+                return -1;
+            }
+        }
+
+        final int slot = set * this.entriesPerSet + way;
+        this.hashes[slot] = hash;
+        this.tags[slot] = tagFor(hash);
+        this.occupancy[set * this.wordsPerSet + (way >>> 6)] |= 1L << way;
+
+        this.size++;
+
+        return way;
+    }
+
+    /**
+     * Invalidate the LRU item in this set and resize
+     *
+     * @param set the set to remove one or more cache items from, according to the algorithm for this
+     *            particular cache instance.
+     * @param hash of the entry that needs the way
+     * @return the way freed by the invalidator, or -1 if the invalidator rejected the new entry
+     */
+    private int invalidateAndCount(final int set, final int hash) {
+        final int way = this.invalidator.selectVictim(set, hash);
+
+        if (way < 0) {
+            throw new InvalidationException("Could not invalidate the bucket");
+        }
+
+        if (way >= this.entriesPerSet || !isOccupied(set, way)) {
+            throw new InvalidationException("The invalidator chose an unset entry in the bucket");
+        }
+
+        if (!this.invalidator.admit(set, way, hash)) {
+            return -1;
+        }
+
+        this.invalidator.onEvict(set, way);
+        unsetWay(set, way);
+
+        return way;
+    }
+
+    /**
+     * Remove the entry at an occupied way.
+     */
+    final void removeWay(final int set, final int way) {
+        this.invalidator.onRemove(set, way);
+        unsetWay(set, way);
+    }
+
+    private void unsetWay(final int set, final int way) {
+        clearSlot(set * this.entriesPerSet + way);
+        this.occupancy[set * this.wordsPerSet + (way >>> 6)] &= ~(1L << way);
+
+        this.size--;
+    }
+
+    /**
+     * A cursor over the entries, in set and way order. Doesn't affect the invalidator.
+     * The primitive caches box the key and value of the current entry.
+     * @return a new cursor, positioned before the first entry
+     */
+    public CacheCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Visit every entry in set and way order, without allocating per entry. Doesn't affect the invalidator.
+     * The primitive caches box the key and value of each entry.
+     * @param action called with the key and value of each entry; must not modify the cache
+     */
+    public void forEachEntry(final BiConsumer<? super K, ? super V> action) {
+        forEachEntry(0, this.numberOfSets, action);
+    }
+
+    private void forEachEntry(final int fromSet, final int toSet, final BiConsumer<? super K, ? super V> action) {
+        for (final SlotWalker walker = new SlotWalker(fromSet, toSet); walker.advance(); ) {
+            action.accept(keyAt(walker.slot()), valueAt(walker.slot()));
+        }
+    }
+
+    /**
+     * Visit every entry like forEachEntry(), with ranges of sets visited in parallel on the common
+     * ForkJoinPool. The cache must not be modified until this returns.
+     * @param action called with the key and value of each entry, from several threads at once
+     */
+    public void parallelForEach(final BiConsumer<? super K, ? super V> action) {
+        inParallel((fromSet, toSet) -> {
+            forEachEntry(fromSet, toSet, action);
+            return 0;
+        });
+    }
+
+    /**
+     * Remove every entry that matches a predicate, in set and way order. Removals are reported to the
+     * invalidator as for remove().
+     * @param filter called with the key and value of each entry; must not modify the cache
+     * @return true if any entry was removed
+     */
+    public boolean removeIf(final BiPredicate<? super K, ? super V> filter) {
+        final int removed = removeIf(0, this.numberOfSets, filter);
+        this.size -= removed;
+
+        return removed > 0;
+    }
+
+    /**
+     * Remove every entry that matches a predicate like removeIf(), with ranges of sets tested in parallel on
+     * the common ForkJoinPool if the invalidator lets distinct sets be updated concurrently. Otherwise, the
+     * calling thread does all the work. The cache must not be otherwise modified until this returns.
+     * @param filter called with the key and value of each entry, possibly from several threads at once and in
+     *               no particular order
+     * @return true if any entry was removed
+     */
+    public boolean parallelRemoveIf(final BiPredicate<? super K, ? super V> filter) {
+        final long removed = this.invalidator.setsIndependent()
+                ? inParallel((fromSet, toSet) -> removeIf(fromSet, toSet, filter))
+                : removeIf(0, this.numberOfSets, filter);
+
+        // Ranges don't share sets, but they do share the size
+        this.size -= (int) removed;
+
+        return removed > 0;
+    }
+
+    /**
+     * Remove the matching entries of the sets [fromSet, toSet), leaving the size to the caller.
+     * @return the number of entries removed
+     */
+    private int removeIf(final int fromSet, final int toSet, final BiPredicate<? super K, ? super V> filter) {
+        int count = 0;
+
+        for (final SlotWalker walker = new SlotWalker(fromSet, toSet); walker.advance(); ) {
+            final int slot = walker.slot();
+
+            if (filter.test(keyAt(slot), valueAt(slot))) {
+                final int set = slot / this.entriesPerSet;
+                final int way = walker.way();
+
+                this.invalidator.onRemove(set, way);
+                clearSlot(slot);
+                this.occupancy[set * this.wordsPerSet + (way >>> 6)] &= ~(1L << way);
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Work on a range of sets, [fromSet, toSet). Ranges given to a bulk operation never overlap, so the
+     * task may modify the slots and invalidator state of its own sets.
+     */
+    @FunctionalInterface
+    interface SetRangeTask {
+        /**
+         * @return a count, summed over all ranges
+         */
+        long run(int fromSet, int toSet);
+    }
+
+    /**
+     * Run a task over all sets, split into ranges that run in parallel on the common ForkJoinPool.
+     * A cache too small to be worth splitting is run by the calling thread.
+     * @return the sum of the counts of all ranges
+     */
+    final long inParallel(final SetRangeTask task) {
+        final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+
+        // A few ranges per thread to balance the load, but not so many that splitting costs more than scanning
+        final int minimumRange = Math.max(MINIMUM_PARALLEL_SETS, this.numberOfSets / (4 * parallelism));
+
+        if (this.numberOfSets <= minimumRange) {
+            return task.run(0, this.numberOfSets);
+        }
+
+        return ForkJoinPool.commonPool().invoke(new SetRangeAction(task, 0, this.numberOfSets, minimumRange));
+    }
+
+    /**
+     * Splits a range of sets in halves down to the minimum range, and sums the counts.
+     */
+    private static final class SetRangeAction extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final SetRangeTask task;
+        private final int fromSet;
+        private final int toSet;
+        private final int minimumRange;
+
+        SetRangeAction(final SetRangeTask task, final int fromSet, final int toSet, final int minimumRange) {
+            this.task = task;
+            this.fromSet = fromSet;
+            this.toSet = toSet;
+            this.minimumRange = minimumRange;
+        }
+
+        @Override
+        protected Long compute() {
+            if (this.toSet - this.fromSet <= this.minimumRange) {
+                return this.task.run(this.fromSet, this.toSet);
+            }
+
+            final int middle = (this.fromSet + this.toSet) >>> 1;
+            final SetRangeAction upper = new SetRangeAction(this.task, middle, this.toSet, this.minimumRange);
+            upper.fork();
+
+            final long lower = new SetRangeAction(this.task, this.fromSet, middle, this.minimumRange).compute();
+
+            return lower + upper.join();
+        }
+    }
+
+    /**
+     * @return the number of entries in the sets [fromSet, toSet)
+     */
+    final int countEntries(final int fromSet, final int toSet) {
+        int count = 0;
+
+        for (int set = fromSet; set < toSet; ++set) {
+            if (isLive(set)) {
+                for (int word = set * this.wordsPerSet; word < (set + 1) * this.wordsPerSet; ++word) {
+                    count += Long.bitCount(this.occupancy[word]);
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Walks the occupied slots in set and way order, without allocating per slot.
+     */
+    final class SlotWalker {
+        private final int endWord;
+
+        // The occupancy word being walked, and its live ways that haven't been visited yet
+        private int word;
+        private long remaining;
+        private int slot = -1;
+        private int way = -1;
+
+        SlotWalker() {
+            this(0, numberOfSets);
+        }
+
+        /**
+         * Walk the sets [fromSet, toSet) only.
+         */
+        SlotWalker(final int fromSet, final int toSet) {
+            this.endWord = toSet * wordsPerSet;
+            this.word = fromSet * wordsPerSet;
+            this.remaining = this.word < this.endWord ? liveWord(this.word) : 0L;
+        }
+
+        boolean hasNext() {
+            while (this.remaining == 0) {
+                if (this.word + 1 >= this.endWord) {
+                    return false;
+                }
+
+                this.remaining = liveWord(++this.word);
+            }
+
+            return true;
+        }
+
+        /**
+         * @return an occupancy word, or 0 if its set is stale
+         */
+        private long liveWord(final int word) {
+            return isLive(word / wordsPerSet) ? occupancy[word] : 0L;
+        }
+
+        /**
+         * Move to the next occupied slot.
+         * @return false if there are no more occupied slots
+         */
+        boolean advance() {
+            if (!hasNext()) {
+                return false;
+            }
+
+            this.way = ((this.word % wordsPerSet) << 6) + Long.numberOfTrailingZeros(this.remaining);
+            this.slot = (this.word / wordsPerSet) * entriesPerSet + this.way;
+            this.remaining &= this.remaining - 1;
+
+            return true;
+        }
+
+        int slot() {
+            return this.slot;
+        }
+
+        int way() {
+            return this.way;
+        }
+    }
+
+    /**
+     * An iterator over the occupied slots, in set and way order. remove() unsets the last slot returned.
+     * Not fail-fast: other changes to the cache during iteration may or may not be seen.
+     *
+     * @param <T> element class
+     */
+    abstract class SlotIterator<T> implements Iterator<T> {
+        private final SlotWalker walker = new SlotWalker();
+        private int lastSlot = -1;
+
+        /**
+         * @return the element for an occupied slot
+         */
+        abstract T element(int slot, int way);
+
+        @Override
+        public boolean hasNext() {
+            return this.walker.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!this.walker.advance()) {
+                throw new NoSuchElementException();
+            }
+
+            this.lastSlot = this.walker.slot();
+
+            return element(this.lastSlot, this.walker.way());
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastSlot < 0) {
+                throw new IllegalStateException();
+            }
+
+            final int set = this.lastSlot / entriesPerSet;
+            final int way = this.lastSlot % entriesPerSet;
+            this.lastSlot = -1;
+
+            // The slot may have been removed or cleared through the cache since
+            if (isLive(set) && isOccupied(set, way)) {
+                removeWay(set, way);
+            }
+        }
+    }
+
+    /**
+     * A spliterator over the occupied slots, which splits on ranges of sets. Its size is exact, and so is the
+     * size of every split: each split counts the entries of one half of its sets. Like SlotIterator, it sees
+     * whatever the cache holds when it gets to a slot, so the cache must not be modified during traversal.
+     *
+     * @param <T> element class
+     */
+    abstract class SlotSpliterator<T> implements Spliterator<T> {
+        private int fromSet;
+        private final int toSet;
+        private long size;
+        private SlotWalker walker;
+
+        SlotSpliterator(final int fromSet, final int toSet, final long size) {
+            this.fromSet = fromSet;
+            this.toSet = toSet;
+            this.size = size;
+        }
+
+        /**
+         * @return the element for an occupied slot
+         */
+        abstract T element(int slot, int way);
+
+        /**
+         * @return a spliterator of the same kind over the sets [fromSet, toSet)
+         */
+        abstract SlotSpliterator<T> split(int fromSet, int toSet, long size);
+
+        private SlotWalker walker() {
+            if (this.walker == null) {
+                this.walker = new SlotWalker(this.fromSet, this.toSet);
+            }
+
+            return this.walker;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super T> action) {
+            final SlotWalker walker = walker();
+
+            if (!walker.advance()) {
+                return false;
+            }
+
+            this.size--;
+            action.accept(element(walker.slot(), walker.way()));
+
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super T> action) {
+            for (final SlotWalker walker = walker(); walker.advance(); ) {
+                action.accept(element(walker.slot(), walker.way()));
+            }
+
+            this.size = 0;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (this.walker != null || this.toSet - this.fromSet < 2) {
+                return null;
+            }
+
+            final int middle = (this.fromSet + this.toSet) >>> 1;
+            final int lowerSize = countEntries(this.fromSet, middle);
+            final Spliterator<T> lower = split(this.fromSet, middle, lowerSize);
+
+            this.fromSet = middle;
+            this.size -= lowerSize;
+
+            return lower;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.size;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL | Spliterator.DISTINCT;
+        }
+    }
+
+    private final class Cursor implements CacheCursor<K, V> {
+        private final SlotWalker walker = new SlotWalker();
+
+        @Override
+        public boolean advance() {
+            return this.walker.advance();
+        }
+
+        @Override
+        public K key() {
+            return keyAt(this.walker.slot());
+        }
+
+        @Override
+        public V value() {
+            return valueAt(this.walker.slot());
+        }
+    }
+
+    /**
+     * Gives the invalidator read access to the slots of this cache.
+     */
+    private final class Slots implements CacheSlots<K, V> {
+        @Override
+        public K key(final int set, final int way) {
+            return keyAt(set * entriesPerSet + way);
+        }
+
+        @Override
+        public V value(final int set, final int way) {
+            return valueAt(set * entriesPerSet + way);
+        }
+
+        @Override
+        public int hash(final int set, final int way) {
+            return hashes[set * entriesPerSet + way];
+        }
+    }
+}
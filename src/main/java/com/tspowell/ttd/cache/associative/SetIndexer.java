@@ -0,0 +1,22 @@
+package com.tspowell.ttd.cache.associative;
+
+/**
+ * Maps the hash of a key to the set that may hold it.
+ */
+@FunctionalInterface
+public interface SetIndexer {
+
+    /**
+     * @param hash of the key
+     * @return a set index in [0, numberOfSets)
+     */
+    int setIndex(int hash);
+
+    /**
+     * Creates an indexer for a number of sets.
+     */
+    @FunctionalInterface
+    interface Factory {
+        SetIndexer create(int numberOfSets);
+    }
+}
@@ -0,0 +1,86 @@
+package com.tspowell.ttd.cache.associative;
+
+/**
+ * The built-in set index functions.
+ */
+public enum SetIndexers implements SetIndexer.Factory {
+
+    /**
+     * The hash modulo the number of sets. A power-of-two number of sets is masked instead, which
+     * gives the same sets without an integer division.
+     */
+    MODULO {
+        @Override
+        public SetIndexer create(final int numberOfSets) {
+            if (isPowerOfTwo(numberOfSets)) {
+                return MASK.create(numberOfSets);
+            }
+
+            return hash -> (hash & Integer.MAX_VALUE) % numberOfSets;
+        }
+    },
+
+    /**
+     * The low bits of the hash. Requires a power-of-two number of sets.
+     */
+    MASK {
+        @Override
+        public SetIndexer create(final int numberOfSets) {
+            requirePowerOfTwo(numberOfSets);
+            final int mask = numberOfSets - 1;
+
+            return hash -> hash & mask;
+        }
+    },
+
+    /**
+     * Fibonacci hashing: the hash is multiplied by 2^32 / phi, and the high bits of the product select the set.
+     * Spreads sequential and strided hashes evenly over the sets, for any number of sets, without a division.
+     */
+    FIBONACCI {
+        @Override
+        public SetIndexer create(final int numberOfSets) {
+            final long sets = numberOfSets;
+
+            return hash -> (int) (((hash * 0x9E3779B9) & 0xFFFFFFFFL) * sets >>> 32);
+        }
+    },
+
+    /**
+     * XOR-folds every group of log2(numberOfSets) bits of the hash into the index, like the set index
+     * function of a CPU cache. Requires a power-of-two number of sets.
+     */
+    XOR_FOLD {
+        @Override
+        public SetIndexer create(final int numberOfSets) {
+            requirePowerOfTwo(numberOfSets);
+
+            if (numberOfSets == 1) {
+                return hash -> 0;
+            }
+
+            final int bits = Integer.numberOfTrailingZeros(numberOfSets);
+            final int mask = numberOfSets - 1;
+
+            return hash -> {
+                int index = 0;
+
+                for (int rest = hash; rest != 0; rest >>>= bits) {
+                    index ^= rest;
+                }
+
+                return index & mask;
+            };
+        }
+    };
+
+    private static boolean isPowerOfTwo(final int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    private static void requirePowerOfTwo(final int numberOfSets) {
+        if (!isPowerOfTwo(numberOfSets)) {
+            throw new IllegalArgumentException("The number of sets must be a power of two, not " + numberOfSets);
+        }
+    }
+}
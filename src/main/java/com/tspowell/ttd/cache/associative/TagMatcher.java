@@ -0,0 +1,35 @@
+package com.tspowell.ttd.cache.associative;
+
+/**
+ * Matches the fingerprint tags of up to 64 contiguous ways against a probe's tag.
+ *
+ * This is the scalar implementation. The multi-release jar carries a Java 17+ version of this class that
+ * compares whole sets at once with the Vector API, when the jdk.incubator.vector module is available.
+ */
+final class TagMatcher {
+
+    private TagMatcher() {
+    }
+
+    /**
+     * @param tags the tag array
+     * @param offset of the first way to match
+     * @param length number of ways to match, at most 64
+     * @param tag to look for
+     * @param occupied bitmap of the live ways among them
+     * @return the bitmap of live ways whose tag equals the given tag
+     */
+    static long candidates(final byte[] tags, final int offset, final int length, final byte tag, final long occupied) {
+        long candidates = 0;
+
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            final int way = Long.numberOfTrailingZeros(bits);
+
+            if (tags[offset + way] == tag) {
+                candidates |= 1L << way;
+            }
+        }
+
+        return candidates;
+    }
+}
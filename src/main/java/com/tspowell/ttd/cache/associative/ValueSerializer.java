@@ -0,0 +1,31 @@
+package com.tspowell.ttd.cache.associative;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values to and from the bytes of an off-heap slot.
+ *
+ * @param <V> value class
+ */
+public interface ValueSerializer<V> {
+
+    /**
+     * @param value to store
+     * @return the number of bytes write() will produce for the value
+     */
+    int serializedSize(V value);
+
+    /**
+     * Write a value at the position of the target, which has at least serializedSize(value) bytes remaining.
+     * @param value to store
+     * @param target slot region
+     */
+    void write(V value, ByteBuffer target);
+
+    /**
+     * Read a value from all remaining bytes of the source.
+     * @param source read-only view of the stored bytes
+     * @return the value
+     */
+    V read(ByteBuffer source);
+}
@@ -0,0 +1,56 @@
+package com.tspowell.ttd.cache.associative;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The built-in value serializers.
+ */
+public final class ValueSerializers {
+
+    /**
+     * Byte arrays, stored as-is.
+     */
+    public static final ValueSerializer<byte[]> BYTE_ARRAY = new ValueSerializer<byte[]>() {
+        @Override
+        public int serializedSize(final byte[] value) {
+            return value.length;
+        }
+
+        @Override
+        public void write(final byte[] value, final ByteBuffer target) {
+            target.put(value);
+        }
+
+        @Override
+        public byte[] read(final ByteBuffer source) {
+            final byte[] value = new byte[source.remaining()];
+            source.get(value);
+
+            return value;
+        }
+    };
+
+    /**
+     * Strings, stored as UTF-8.
+     */
+    public static final ValueSerializer<String> UTF8_STRING = new ValueSerializer<String>() {
+        @Override
+        public int serializedSize(final String value) {
+            return value.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        public void write(final String value, final ByteBuffer target) {
+            target.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String read(final ByteBuffer source) {
+            return StandardCharsets.UTF_8.decode(source).toString();
+        }
+    };
+
+    private ValueSerializers() {
+    }
+}
@@ -0,0 +1,287 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Adaptive Replacement Cache (ARC) invalidation, per set.
+ *
+ * Every set splits its entries between T1, entries used once since they were inserted, and T2, entries used
+ * again. It also remembers the hashes of the keys it evicted recently: B1 those evicted from T1, B2 those
+ * evicted from T2. A new key found in B1 would have been a hit if T1 were larger, so the set's target size
+ * for T1 grows; one found in B2 shrinks it, and both enter T2 directly. The victim is the least recently used
+ * entry of T1 while T1 is over its target, and of T2 otherwise. The target starts at zero and moves by the
+ * ratio of the ghost lists' sizes, so the set tunes itself between recency and frequency with no setting.
+ *
+ * As in ARC, T1 and B1 together hold at most as many entries as the set has ways, and all four lists at most
+ * twice that; the ghost lists keep only hashes, so a set costs two ints of history per way. Within T1 and T2,
+ * recency is kept as a use stamp per slot, and the least recently used entry is found by scanning the set's
+ * ways. All state is per set, so distinct sets may be updated concurrently.
+ */
+public class ARCInvalidator<K, V> implements IndexedCacheInvalidator<K, V> {
+    private static final int NONE = -1;
+    private static final IntPredicate ANY_WAY = way -> true;
+
+    private static final byte EMPTY = 0;
+    private static final byte T1 = 1;
+    private static final byte T2 = 2;
+
+    private final int entriesPerSet;
+    private final CacheSlots<K, V> slots;
+
+    // List and use stamp of every slot, the T1 and T2 counts and the use clock of every set
+    private final byte[] lists;
+    private final long[] stamps;
+    private final int[] t1Counts;
+    private final int[] t2Counts;
+    private final long[] clocks;
+
+    // Ghost hashes of every set, oldest first, and their counts
+    private final int[] b1;
+    private final int[] b2;
+    private final int[] b1Counts;
+    private final int[] b2Counts;
+
+    // Target size of T1 in every set
+    private final double[] targets;
+
+    public ARCInvalidator(final int numberOfSets, final int entriesPerSet, final CacheSlots<K, V> slots) {
+        final int capacity = numberOfSets * entriesPerSet;
+
+        this.entriesPerSet = entriesPerSet;
+        this.slots = slots;
+        this.lists = new byte[capacity];
+        this.stamps = new long[capacity];
+        this.t1Counts = new int[numberOfSets];
+        this.t2Counts = new int[numberOfSets];
+        this.clocks = new long[numberOfSets];
+        this.b1 = new int[capacity];
+        this.b2 = new int[capacity];
+        this.b1Counts = new int[numberOfSets];
+        this.b2Counts = new int[numberOfSets];
+        this.targets = new double[numberOfSets];
+    }
+
+    /**
+     * @return the target size of T1 in a set, between 0 and the number of ways
+     */
+    public double target(final int set) {
+        return this.targets[set];
+    }
+
+    private void stamp(final int set, final int way) {
+        this.stamps[set * this.entriesPerSet + way] = ++this.clocks[set];
+    }
+
+    /**
+     * @return the least recently used way of a list in a set that the filter accepts, or NONE
+     */
+    private int leastRecent(final int set, final byte list, final IntPredicate evictable) {
+        final int base = set * this.entriesPerSet;
+        int victim = NONE;
+        long oldest = Long.MAX_VALUE;
+
+        for (int way = 0; way < this.entriesPerSet; ++way) {
+            if (this.lists[base + way] == list && this.stamps[base + way] < oldest && evictable.test(way)) {
+                oldest = this.stamps[base + way];
+                victim = way;
+            }
+        }
+
+        return victim;
+    }
+
+    private void setList(final int set, final int way, final byte list) {
+        final int slot = set * this.entriesPerSet + way;
+        final byte previous = this.lists[slot];
+
+        if (previous == T1) {
+            this.t1Counts[set]--;
+        } else if (previous == T2) {
+            this.t2Counts[set]--;
+        }
+
+        if (list == T1) {
+            this.t1Counts[set]++;
+        } else if (list == T2) {
+            this.t2Counts[set]++;
+        }
+
+        this.lists[slot] = list;
+    }
+
+    /**
+     * @return the index of a hash in a ghost list of a set, or NONE
+     */
+    private int indexOf(final int[] ghosts, final int count, final int set, final int hash) {
+        final int base = set * this.entriesPerSet;
+
+        for (int i = 0; i < count; ++i) {
+            if (ghosts[base + i] == hash) {
+                return i;
+            }
+        }
+
+        return NONE;
+    }
+
+    private static void removeAt(final int[] ghosts, final int base, final int index, final int count) {
+        System.arraycopy(ghosts, base + index + 1, ghosts, base + index, count - index - 1);
+    }
+
+    /**
+     * Append a hash to a ghost list of a set, dropping its oldest hash if the list is full.
+     * @return the new count
+     */
+    private int append(final int[] ghosts, final int count, final int set, final int hash) {
+        final int base = set * this.entriesPerSet;
+
+        if (count == this.entriesPerSet) {
+            removeAt(ghosts, base, 0, count);
+            ghosts[base + count - 1] = hash;
+            return count;
+        }
+
+        ghosts[base + count] = hash;
+        return count + 1;
+    }
+
+    /**
+     * Drop the oldest ghosts until T1 and B1 fit in the set's ways, and all four lists in twice that.
+     */
+    private void trimGhosts(final int set) {
+        final int base = set * this.entriesPerSet;
+
+        int excess = Math.min(this.b1Counts[set], this.t1Counts[set] + this.b1Counts[set] - this.entriesPerSet);
+        if (excess > 0) {
+            System.arraycopy(this.b1, base + excess, this.b1, base, this.b1Counts[set] - excess);
+            this.b1Counts[set] -= excess;
+        }
+
+        excess = Math.min(this.b2Counts[set], this.t1Counts[set] + this.t2Counts[set]
+                + this.b1Counts[set] + this.b2Counts[set] - 2 * this.entriesPerSet);
+        if (excess > 0) {
+            System.arraycopy(this.b2, base + excess, this.b2, base, this.b2Counts[set] - excess);
+            this.b2Counts[set] -= excess;
+        }
+    }
+
+    /**
+     * The target of a set after a miss on a hash: larger if the hash is in B1, smaller if it is in B2.
+     */
+    private double adaptedTarget(final int set, final int hash) {
+        final int b1Count = this.b1Counts[set];
+        final int b2Count = this.b2Counts[set];
+
+        if (indexOf(this.b1, b1Count, set, hash) != NONE) {
+            return Math.min(this.entriesPerSet, this.targets[set] + Math.max(1, (double) b2Count / b1Count));
+        }
+
+        if (indexOf(this.b2, b2Count, set, hash) != NONE) {
+            return Math.max(0, this.targets[set] - Math.max(1, (double) b1Count / b2Count));
+        }
+
+        return this.targets[set];
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        setList(set, way, T2);
+        stamp(set, way);
+    }
+
+    /**
+     * A new entry enters T1, unless its hash is a ghost: then the set adapts its target, and the entry enters
+     * T2.
+     */
+    @Override
+    public void onInsert(final int set, final int way) {
+        final int hash = this.slots.hash(set, way);
+        final int base = set * this.entriesPerSet;
+
+        this.targets[set] = adaptedTarget(set, hash);
+
+        int index = indexOf(this.b1, this.b1Counts[set], set, hash);
+        if (index != NONE) {
+            removeAt(this.b1, base, index, this.b1Counts[set]--);
+            setList(set, way, T2);
+        } else if ((index = indexOf(this.b2, this.b2Counts[set], set, hash)) != NONE) {
+            removeAt(this.b2, base, index, this.b2Counts[set]--);
+            setList(set, way, T2);
+        } else {
+            setList(set, way, T1);
+        }
+
+        stamp(set, way);
+        trimGhosts(set);
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        setList(set, way, EMPTY);
+    }
+
+    @Override
+    public int selectVictim(final int set) {
+        return replace(set, this.targets[set], false, ANY_WAY);
+    }
+
+    /**
+     * ARC's replacement, with the target the set will have once the new entry is inserted.
+     */
+    @Override
+    public int selectVictim(final int set, final int candidateHash) {
+        return selectVictim(set, candidateHash, ANY_WAY);
+    }
+
+    /**
+     * As selectVictim(set, candidateHash), taking the least recently used accepted entry of the other list if
+     * the filter rejects every entry of the list ARC would evict from.
+     */
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        return replace(set, adaptedTarget(set, candidateHash),
+                indexOf(this.b2, this.b2Counts[set], set, candidateHash) != NONE, evictable);
+    }
+
+    private int replace(final int set, final double target, final boolean inB2, final IntPredicate evictable) {
+        final int t1 = this.t1Counts[set];
+        final boolean fromT1 = this.t2Counts[set] == 0 || t1 > 0 && (t1 > target || inB2 && t1 == target);
+        final int victim = leastRecent(set, fromT1 ? T1 : T2, evictable);
+
+        return victim != NONE ? victim : leastRecent(set, fromT1 ? T2 : T1, evictable);
+    }
+
+    /**
+     * The victim's hash becomes a ghost of the list it was evicted from.
+     */
+    @Override
+    public void onEvict(final int set, final int way) {
+        final int hash = this.slots.hash(set, way);
+        final byte list = this.lists[set * this.entriesPerSet + way];
+
+        setList(set, way, EMPTY);
+
+        if (list == T1) {
+            this.b1Counts[set] = append(this.b1, this.b1Counts[set], set, hash);
+        } else if (list == T2) {
+            this.b2Counts[set] = append(this.b2, this.b2Counts[set], set, hash);
+        }
+
+        trimGhosts(set);
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        final int base = set * this.entriesPerSet;
+
+        Arrays.fill(this.lists, base, base + this.entriesPerSet, EMPTY);
+        this.t1Counts[set] = 0;
+        this.t2Counts[set] = 0;
+        this.b1Counts[set] = 0;
+        this.b2Counts[set] = 0;
+        this.targets[set] = 0;
+
+        return true;
+    }
+}
@@ -2,6 +2,8 @@ package com.tspowell.ttd.cache.invalidation;
 
 import com.tspowell.ttd.cache.UnsettableEntry;
 
+import java.util.function.Predicate;
+
 public interface CacheInvalidator<K, V> {
     void touch(UnsettableEntry<K, V> entry);
     void remove(UnsettableEntry<K, V> entry);
@@ -9,4 +11,25 @@ public interface CacheInvalidator<K, V> {
      * @return true if an item was removed, false if no items were removed.
      */
     boolean invalidate();
+
+    /**
+     * Required by CacheInvalidatorAdapter, which chooses victims with it.
+     *
+     * @return the entry invalidate() would unset next, without unsetting it; null if there is none, or if the
+     *         invalidator can't tell (the default)
+     */
+    default UnsettableEntry<K, V> peek() {
+        return null;
+    }
+
+    /**
+     * @param evictable accepts the entries that may be unset
+     * @return the first entry the filter accepts, in the order invalidate() would unset them, without unsetting
+     *         it; null if there is none. By default, the entry of peek() if the filter accepts it.
+     */
+    default UnsettableEntry<K, V> peek(final Predicate<? super UnsettableEntry<K, V>> evictable) {
+        final UnsettableEntry<K, V> entry = peek();
+
+        return entry != null && evictable.test(entry) ? entry : null;
+    }
 }
\ No newline at end of file
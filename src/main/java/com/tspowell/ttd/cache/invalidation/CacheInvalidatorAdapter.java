@@ -0,0 +1,166 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import com.tspowell.ttd.cache.IndexedEntry;
+import com.tspowell.ttd.cache.UnsettableEntry;
+
+import java.lang.reflect.Array;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Plugs per-set CacheInvalidators into the IndexedCacheInvalidator SPI.
+ *
+ * One CacheInvalidator is created for every set, and each slot is presented to it as an UnsettableEntry.
+ * Victims are chosen with peek(), which leaves the set invalidator's order as it is, so the invalidators must
+ * implement it; invalidate() is never called, and the entries can't be unset.
+ */
+public class CacheInvalidatorAdapter<K, V> implements IndexedCacheInvalidator<K, V> {
+    private static final int NONE = -1;
+
+    private final int entriesPerSet;
+    private final CacheSlots<K, V> slots;
+    private final Supplier<CacheInvalidator<K, V>> invalidatorSupplier;
+    private final CacheInvalidator<K, V>[] invalidators;
+
+    // Created on first use of a slot
+    private final SlotEntry[] entries;
+
+    @SuppressWarnings("unchecked")
+    public CacheInvalidatorAdapter(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final CacheSlots<K, V> slots,
+            final Supplier<CacheInvalidator<K, V>> invalidatorSupplier) {
+        this.entriesPerSet = entriesPerSet;
+        this.slots = slots;
+        this.invalidatorSupplier = invalidatorSupplier;
+        this.invalidators = (CacheInvalidator<K, V>[]) Array.newInstance(CacheInvalidator.class, numberOfSets);
+        this.entries = (SlotEntry[]) Array.newInstance(SlotEntry.class, numberOfSets * entriesPerSet);
+
+        for (int i = 0; i < numberOfSets; ++i) {
+            this.invalidators[i] = invalidatorSupplier.get();
+        }
+    }
+
+    /**
+     * @param invalidatorSupplier creates the invalidator of each set
+     * @return a factory adapting the per-set invalidators
+     */
+    public static <K, V> IndexedCacheInvalidator.Factory<K, V> factory(
+            final Supplier<CacheInvalidator<K, V>> invalidatorSupplier) {
+        return (numberOfSets, entriesPerSet, slots) ->
+                new CacheInvalidatorAdapter<>(numberOfSets, entriesPerSet, slots, invalidatorSupplier);
+    }
+
+    private SlotEntry entry(final int set, final int way) {
+        final int slot = set * this.entriesPerSet + way;
+        SlotEntry entry = this.entries[slot];
+
+        if (entry == null) {
+            entry = new SlotEntry(set, way);
+            this.entries[slot] = entry;
+        }
+
+        return entry;
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        this.invalidators[set].touch(entry(set, way));
+    }
+
+    @Override
+    public void onInsert(final int set, final int way) {
+        this.invalidators[set].touch(entry(set, way));
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        this.invalidators[set].remove(entry(set, way));
+    }
+
+    /**
+     * Replace the invalidator of the set with a new one.
+     */
+    @Override
+    public boolean reset(final int set) {
+        this.invalidators[set] = this.invalidatorSupplier.get();
+
+        return true;
+    }
+
+    /**
+     * The victim is the entry the set's invalidator would unset next. It stays tracked, in place, until
+     * onEvict(): if the new entry isn't admitted, the invalidator's order is unchanged.
+     *
+     * @throws InvalidationException if the invalidator of the full set has no entry to peek at, as when it
+     *         doesn't implement peek()
+     */
+    @Override
+    public int selectVictim(final int set) {
+        final UnsettableEntry<K, V> victim = this.invalidators[set].peek();
+        if (victim == null) {
+            throw new InvalidationException("The invalidator of a full set did not peek at a victim; "
+                    + "CacheInvalidatorAdapter requires CacheInvalidator.peek()");
+        }
+
+        return ((IndexedEntry<K, V>) victim).way();
+    }
+
+    /**
+     * The first entry the set's invalidator would unset among the ways the filter accepts.
+     */
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        final UnsettableEntry<K, V> victim = this.invalidators[set].peek(
+                entry -> evictable.test(((IndexedEntry<K, V>) entry).way()));
+
+        return victim == null ? NONE : ((IndexedEntry<K, V>) victim).way();
+    }
+
+    /**
+     * A live view of one slot.
+     */
+    private final class SlotEntry implements IndexedEntry<K, V> {
+        private final int set;
+        private final int way;
+
+        SlotEntry(final int set, final int way) {
+            this.set = set;
+            this.way = way;
+        }
+
+        /**
+         * Only the cache evicts its entries, after selectVictim(); the set invalidators are never asked to.
+         */
+        @Override
+        public void unset() {
+            throw new InvalidationException("Set invalidators behind a CacheInvalidatorAdapter must not unset "
+                    + "entries; the adapter evicts the entry peek() returns");
+        }
+
+        @Override
+        public int way() {
+            return this.way;
+        }
+
+        @Override
+        public K getKey() {
+            return slots.key(this.set, this.way);
+        }
+
+        @Override
+        public V getValue() {
+            return slots.value(this.set, this.way);
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            if (!clazz.isInstance(this)) {
+                throw new IllegalArgumentException("Not an internal associative cache entry class!");
+            }
+
+            return clazz.cast(this);
+        }
+    }
+}
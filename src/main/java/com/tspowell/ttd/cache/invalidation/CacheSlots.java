@@ -0,0 +1,13 @@
+package com.tspowell.ttd.cache.invalidation;
+
+/**
+ * Read access to the slots of a cache, addressed by set and way.
+ * Given to an IndexedCacheInvalidator for policies that need to look at the cached entries.
+ */
+public interface CacheSlots<K, V> {
+    K key(int set, int way);
+
+    V value(int set, int way);
+
+    int hash(int set, int way);
+}
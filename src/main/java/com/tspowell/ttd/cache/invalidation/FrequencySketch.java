@@ -0,0 +1,133 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how often keys were seen recently, by hash: a count-min sketch of 4-bit counters, behind a
+ * doorkeeper Bloom filter.
+ *
+ * The first occurrence of a hash only sets its doorkeeper bits, so keys seen once (most keys, in a typical
+ * trace) never take up counters. Later occurrences increment the hash's four counters, which saturate at 15;
+ * the estimate is the smallest of them, plus one for the doorkeeper. After a sample of ten increments per
+ * cache entry, every counter is halved and the doorkeeper is cleared, so the frequencies follow the recent
+ * past. The sketch takes about 9 bytes per cache entry, and stops growing at 2^30 counters (576MB), for
+ * caches of about 2^26 entries.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    // 2^30 counters: the largest table whose counter indices and mask fit in an int
+    private static final int MAXIMUM_LONGS = 1 << 26;
+
+    // 16 counters of 4 bits per long
+    private final long[] table;
+    private final int counterMask;
+
+    private final long[] doorkeeper;
+    private final int doorkeeperMask;
+
+    private final int sampleSize;
+    private int additions = 0;
+
+    /**
+     * @param capacity number of entries of the cache whose keys are counted
+     */
+    FrequencySketch(final int capacity) {
+        final long powerOfTwo = Long.highestOneBit(Math.max(1, capacity) - 1L) << 1;
+        final int longs = (int) Math.max(8, Math.min(MAXIMUM_LONGS, powerOfTwo));
+
+        this.table = new long[longs];
+        this.counterMask = longs * 16 - 1;
+
+        // 8 bits per long of the table, so about one byte per entry
+        this.doorkeeper = new long[longs / 8];
+        this.doorkeeperMask = longs * 8 - 1;
+
+        this.sampleSize = (int) Math.min(10L * Math.max(1, capacity), Integer.MAX_VALUE);
+    }
+
+    private static long spread(final int hash) {
+        final long h = hash * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 31);
+    }
+
+    private int counterIndex(final long spread, final int i) {
+        return (int) ((spread + SEEDS[i]) * SEEDS[i] >>> 32) & this.counterMask;
+    }
+
+    private int counter(final int index) {
+        return (int) (this.table[index >>> 4] >>> ((index & 15) << 2)) & 15;
+    }
+
+    /**
+     * Set the doorkeeper bits of a hash.
+     * @return false if they were all set already
+     */
+    private boolean admitToDoorkeeper(final long spread) {
+        final boolean present = inDoorkeeper(spread);
+        final int first = (int) spread & this.doorkeeperMask;
+        final int second = (int) (spread >>> 32) & this.doorkeeperMask;
+
+        this.doorkeeper[first >>> 6] |= 1L << first;
+        this.doorkeeper[second >>> 6] |= 1L << second;
+
+        return !present;
+    }
+
+    private boolean inDoorkeeper(final long spread) {
+        final int first = (int) spread & this.doorkeeperMask;
+        final int second = (int) (spread >>> 32) & this.doorkeeperMask;
+
+        return (this.doorkeeper[first >>> 6] & (1L << first)) != 0
+                && (this.doorkeeper[second >>> 6] & (1L << second)) != 0;
+    }
+
+    /**
+     * Count an occurrence of a hash.
+     */
+    void increment(final int hash) {
+        final long spread = spread(hash);
+
+        if (!admitToDoorkeeper(spread)) {
+            for (int i = 0; i < SEEDS.length; ++i) {
+                final int index = counterIndex(spread, i);
+
+                if (counter(index) < 15) {
+                    this.table[index >>> 4] += 1L << ((index & 15) << 2);
+                }
+            }
+        }
+
+        if (++this.additions >= this.sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @return the estimated number of recent occurrences of a hash, at most 16
+     */
+    int frequency(final int hash) {
+        final long spread = spread(hash);
+
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; ++i) {
+            frequency = Math.min(frequency, counter(counterIndex(spread, i)));
+        }
+
+        return inDoorkeeper(spread) ? frequency + 1 : frequency;
+    }
+
+    /**
+     * Halve every counter and forget the doorkeeper.
+     */
+    private void age() {
+        for (int i = 0; i < this.table.length; ++i) {
+            this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+        }
+
+        Arrays.fill(this.doorkeeper, 0L);
+        this.additions /= 2;
+    }
+}
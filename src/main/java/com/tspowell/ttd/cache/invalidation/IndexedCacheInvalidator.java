@@ -0,0 +1,117 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A cache invalidation policy for every set of a cache.
+ *
+ * Unlike CacheInvalidator, which is created once per set and tracks entry objects, a single instance of this
+ * policy owns the metadata of all sets (typically in flat arrays) and is told about slots by set and way.
+ * Implementations that keep the metadata of different sets independent allow distinct sets to be updated
+ * concurrently; those that share state between sets, such as a frequency sketch, say so with
+ * setsIndependent(), and are then updated by one thread at a time.
+ */
+public interface IndexedCacheInvalidator<K, V> {
+
+    /**
+     * An existing entry was read.
+     */
+    void onHit(int set, int way);
+
+    /**
+     * An existing entry was given a new value. Treated as a hit unless the policy tells them apart.
+     */
+    default void onUpdate(final int set, final int way) {
+        onHit(set, way);
+    }
+
+    /**
+     * A new entry was placed in an empty way.
+     */
+    void onInsert(int set, int way);
+
+    /**
+     * An entry was removed from the cache.
+     */
+    void onRemove(int set, int way);
+
+    /**
+     * Choose the entry to evict from a full set. The victim is still tracked until onEvict() is called.
+     *
+     * @return the way to evict, or -1 if nothing can be evicted.
+     */
+    int selectVictim(int set);
+
+    /**
+     * Choose the entry to evict from a full set for a new entry. Policies that keep a history of evicted keys
+     * may let it weigh in; by default, the same as selectVictim(set). Must not change the policy's state in
+     * ways that a later call would see, as callers may ask again before evicting.
+     *
+     * @param candidateHash hash of the new entry's key
+     * @return the way to evict, or -1 if nothing can be evicted.
+     */
+    default int selectVictim(final int set, final int candidateHash) {
+        return selectVictim(set);
+    }
+
+    /**
+     * Choose the entry to evict from a full set for a new entry, among the ways a filter accepts: the first of
+     * them in the order the policy would evict them. Like selectVictim(), changes nothing. By default, the
+     * victim of selectVictim(set, candidateHash) if the filter accepts it.
+     *
+     * @param candidateHash hash of the new entry's key
+     * @param evictable accepts the ways that may be evicted
+     * @return the way to evict, or -1 if the policy finds none that the filter accepts
+     */
+    default int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        final int victim = selectVictim(set, candidateHash);
+
+        return victim >= 0 && evictable.test(victim) ? victim : -1;
+    }
+
+    /**
+     * Decide whether a new entry may replace the victim chosen by selectVictim() in a full set. If not, the
+     * new entry isn't cached, and the victim stays.
+     *
+     * @param set the full set
+     * @param victimWay the way selectVictim() chose
+     * @param candidateHash hash of the new entry's key
+     * @return true (the default) to evict the victim for the new entry
+     */
+    default boolean admit(final int set, final int victimWay, final int candidateHash) {
+        return true;
+    }
+
+    /**
+     * The victim chosen by selectVictim() was evicted.
+     */
+    default void onEvict(final int set, final int way) {
+        onRemove(set, way);
+    }
+
+    /**
+     * Forget every way of a set at once: the cache was cleared. Called lazily, before the set is next used.
+     *
+     * @return true if the policy dropped its state for the set. If false (the default), the cache reports
+     *         every way of the set that was occupied to onRemove() instead.
+     */
+    default boolean reset(final int set) {
+        return false;
+    }
+
+    /**
+     * @return true (the default) if the metadata of different sets is independent, so that distinct sets may
+     *         be updated concurrently; false if the sets share state, and must not be
+     */
+    default boolean setsIndependent() {
+        return true;
+    }
+
+    /**
+     * Creates a policy for the geometry of a cache.
+     */
+    @FunctionalInterface
+    interface Factory<K, V> {
+        IndexedCacheInvalidator<K, V> create(int numberOfSets, int entriesPerSet, CacheSlots<K, V> slots);
+    }
+}
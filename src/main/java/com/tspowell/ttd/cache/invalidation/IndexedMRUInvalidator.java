@@ -0,0 +1,54 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import com.tspowell.ttd.cache.invalidation.lru.IndexedLRUList;
+
+import java.util.function.IntPredicate;
+
+/**
+ * O(1) cache invalidation for every set of a cache, using a Most Recently Used algorithm.
+ * One use-ordered list per set is linked by way index in shared arrays.
+ */
+public class IndexedMRUInvalidator<K, V>
+        extends IndexedLRUList implements IndexedCacheInvalidator<K, V> {
+
+    public IndexedMRUInvalidator(final int numberOfSets, final int entriesPerSet, final CacheSlots<K, V> slots) {
+        super(numberOfSets, entriesPerSet);
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        markRecentlyUsed(set, way);
+    }
+
+    @Override
+    public void onInsert(final int set, final int way) {
+        markRecentlyUsed(set, way);
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        removeEntry(set, way);
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        clearSet(set);
+        return true;
+    }
+
+    @Override
+    public int selectVictim(final int set) {
+        return tail(set);
+    }
+
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        for (int way = tail(set); way != NONE; way = previous(set, way)) {
+            if (evictable.test(way)) {
+                return way;
+            }
+        }
+
+        return NONE;
+    }
+}
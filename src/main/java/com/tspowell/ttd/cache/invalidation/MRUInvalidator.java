@@ -1,21 +1,17 @@
 package com.tspowell.ttd.cache.invalidation;
 
-import com.tspowell.ttd.cache.invalidation.lru.LinkedLRUList;
-import com.tspowell.ttd.cache.invalidation.lru.LinkedEntry;
+import com.tspowell.ttd.cache.invalidation.lru.IndexedEntryList;
 import com.tspowell.ttd.cache.UnsettableEntry;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.Predicate;
 
 /**
- * O(1) cache invalidation for a linked entry list in a bucket, using a Most Recently Used algorithm
+ * O(1) cache invalidation for the entries in a bucket, using a Most Recently Used algorithm.
+ * Use order is linked by way index, so touching an IndexedEntry neither hashes its key nor allocates; other
+ * entries are linked by key.
  */
 public class MRUInvalidator<K, V>
-        extends LinkedLRUList<K, V> implements CacheInvalidator<K, V> {
-
-    // This map is an unfortunate necessity. We don't want to have to traverse through the whole list to find
-    // our matching object.
-    final Map<K, LinkedEntry<K, V>> m = new HashMap<>();
+        extends IndexedEntryList<K, V> implements CacheInvalidator<K, V> {
 
     /**
      * Append to the end of the use-ordered linked list for this bucket.
@@ -25,18 +21,7 @@ public class MRUInvalidator<K, V>
      */
     @Override
     public void touch(final UnsettableEntry<K, V> entry) {
-
-        final K key = entry.getKey();
-        LinkedEntry<K, V> linked;
-
-        if (m.containsKey(key)) {
-            linked = m.get(key);
-        } else {
-            linked = new LinkedEntry<>(entry);
-            m.put(key, linked);
-        }
-
-        markRecentlyUsed(linked);
+        markRecentlyUsed(entry);
     }
 
     /**
@@ -46,25 +31,21 @@ public class MRUInvalidator<K, V>
      */
     @Override
     public void remove(final UnsettableEntry<K, V> entry) {
-        final LinkedEntry<K, V> inMap = m.get(entry.getKey());
-
-        if (inMap != null) {
-            removeEntry(inMap);
-            m.remove(entry.getKey());
-        }
+        removeEntry(entry);
     }
 
     @Override
     public boolean invalidate() {
-        final LinkedEntry<K, V> toRemove = tail;
-
-        if (toRemove == null) {
-            return false;
-        }
+        return unsetEntry(tail(0));
+    }
 
-        removeEntry(toRemove);
-        toRemove.unset();
+    @Override
+    public UnsettableEntry<K, V> peek() {
+        return entryAt(tail(0));
+    }
 
-        return true;
+    @Override
+    public UnsettableEntry<K, V> peek(final Predicate<? super UnsettableEntry<K, V>> evictable) {
+        return firstEntry(false, evictable);
     }
 }
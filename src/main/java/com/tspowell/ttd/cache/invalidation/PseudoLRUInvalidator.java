@@ -0,0 +1,133 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Tree pseudo-LRU cache invalidation, as used by hardware caches.
+ *
+ * The ways of a set are the leaves of a binary tree, and every inner node holds one bit pointing towards the
+ * half that was used less recently. The N-1 bits of each set are packed into one long, so at most 64 ways are
+ * supported. A touch flips the log2(N) bits on the path to the way; the victim is found by following the bits
+ * from the root. Associativities that aren't a power of two are padded with leaves that are never chosen.
+ */
+public class PseudoLRUInvalidator<K, V> implements IndexedCacheInvalidator<K, V> {
+    public static final int MAX_ENTRIES_PER_SET = 64;
+
+    private static final int NONE = -1;
+
+    private final int entriesPerSet;
+    private final int leaves;
+
+    // Node i has children 2i+1 and 2i+2. A set bit means the right subtree holds the pseudo-LRU way.
+    private final long[] trees;
+
+    public PseudoLRUInvalidator(final int numberOfSets, final int entriesPerSet, final CacheSlots<K, V> slots) {
+        if (entriesPerSet > MAX_ENTRIES_PER_SET) {
+            throw new IllegalArgumentException(
+                    "Pseudo-LRU supports at most " + MAX_ENTRIES_PER_SET + " entries per set.");
+        }
+
+        this.entriesPerSet = entriesPerSet;
+        this.leaves = entriesPerSet == 1 ? 1 : Integer.highestOneBit(entriesPerSet - 1) << 1;
+        this.trees = new long[numberOfSets];
+    }
+
+    /**
+     * Point every node on the path to the way away from it.
+     */
+    private void touch(final int set, final int way) {
+        long bits = this.trees[set];
+        int node = 0;
+        int low = 0;
+
+        for (int span = this.leaves >>> 1; span > 0; span >>>= 1) {
+            if (way < low + span) {
+                bits |= 1L << node;
+                node = 2 * node + 1;
+            } else {
+                bits &= ~(1L << node);
+                low += span;
+                node = 2 * node + 2;
+            }
+        }
+
+        this.trees[set] = bits;
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        touch(set, way);
+    }
+
+    @Override
+    public void onInsert(final int set, final int way) {
+        touch(set, way);
+    }
+
+    /**
+     * Nothing to forget: the cache fills empty ways before it asks for a victim, and the insert touches the way.
+     */
+    @Override
+    public void onRemove(final int set, final int way) {
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        this.trees[set] = 0L;
+        return true;
+    }
+
+    @Override
+    public int selectVictim(final int set) {
+        final long bits = this.trees[set];
+        int node = 0;
+        int low = 0;
+
+        for (int span = this.leaves >>> 1; span > 0; span >>>= 1) {
+            // Never descend into padding leaves
+            if ((bits & (1L << node)) != 0 && low + span < this.entriesPerSet) {
+                low += span;
+                node = 2 * node + 2;
+            } else {
+                node = 2 * node + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Follows the bits from the root as selectVictim() does, but backs out of subtrees with no way the filter
+     * accepts.
+     */
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        return victim(this.trees[set], 0, 0, this.leaves >>> 1, evictable);
+    }
+
+    /**
+     * @return the pseudo-LRU way the filter accepts among the leaves of a node, or NONE
+     */
+    private int victim(final long bits, final int node, final int low, final int span, final IntPredicate evictable) {
+        if (low >= this.entriesPerSet) {
+            return NONE;
+        }
+
+        if (span == 0) {
+            return evictable.test(low) ? low : NONE;
+        }
+
+        final boolean right = (bits & (1L << node)) != 0;
+        final int first = right
+                ? victim(bits, 2 * node + 2, low + span, span >>> 1, evictable)
+                : victim(bits, 2 * node + 1, low, span >>> 1, evictable);
+
+        if (first != NONE) {
+            return first;
+        }
+
+        return right
+                ? victim(bits, 2 * node + 1, low, span >>> 1, evictable)
+                : victim(bits, 2 * node + 2, low + span, span >>> 1, evictable);
+    }
+}
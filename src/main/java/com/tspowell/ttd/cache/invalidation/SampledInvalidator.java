@@ -0,0 +1,102 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Passes only a sampled fraction of hits on to another invalidation policy.
+ *
+ * For read-mostly caches, most of the cost of an exact recency policy is in updating it on every hit. With
+ * sampling, a hit reaches the policy with the given probability, drawn from the thread-local PRNG; inserts,
+ * updates, removals and evictions always do. Works with any policy, including per-set CacheInvalidators
+ * through a CacheInvalidatorAdapter.
+ */
+public class SampledInvalidator<K, V> implements IndexedCacheInvalidator<K, V> {
+    // Hits are sampled by comparing 24 random bits with a threshold
+    private static final int SAMPLE_BITS = 24;
+
+    private final IndexedCacheInvalidator<K, V> delegate;
+    private final int threshold;
+
+    /**
+     * @param delegate the policy to sample hits for
+     * @param sampleRate fraction of hits passed on, in [0, 1]
+     */
+    public SampledInvalidator(final IndexedCacheInvalidator<K, V> delegate, final double sampleRate) {
+        if (!(sampleRate >= 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("The sample rate must be between 0 and 1.");
+        }
+
+        this.delegate = delegate;
+        this.threshold = (int) Math.round(sampleRate * (1 << SAMPLE_BITS));
+    }
+
+    /**
+     * @param sampleRate fraction of hits passed on, in [0, 1]
+     * @param delegate creates the policy to sample hits for
+     * @return a factory wrapping the policy in a SampledInvalidator
+     */
+    public static <K, V> IndexedCacheInvalidator.Factory<K, V> factory(
+            final double sampleRate,
+            final IndexedCacheInvalidator.Factory<K, V> delegate) {
+        return (numberOfSets, entriesPerSet, slots) ->
+                new SampledInvalidator<>(delegate.create(numberOfSets, entriesPerSet, slots), sampleRate);
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        if ((ThreadLocalRandom.current().nextInt() >>> (32 - SAMPLE_BITS)) < this.threshold) {
+            this.delegate.onHit(set, way);
+        }
+    }
+
+    @Override
+    public void onUpdate(final int set, final int way) {
+        this.delegate.onUpdate(set, way);
+    }
+
+    @Override
+    public void onInsert(final int set, final int way) {
+        this.delegate.onInsert(set, way);
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        this.delegate.onRemove(set, way);
+    }
+
+    @Override
+    public int selectVictim(final int set) {
+        return this.delegate.selectVictim(set);
+    }
+
+    @Override
+    public int selectVictim(final int set, final int candidateHash) {
+        return this.delegate.selectVictim(set, candidateHash);
+    }
+
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        return this.delegate.selectVictim(set, candidateHash, evictable);
+    }
+
+    @Override
+    public boolean admit(final int set, final int victimWay, final int candidateHash) {
+        return this.delegate.admit(set, victimWay, candidateHash);
+    }
+
+    @Override
+    public void onEvict(final int set, final int way) {
+        this.delegate.onEvict(set, way);
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        return this.delegate.reset(set);
+    }
+
+    @Override
+    public boolean setsIndependent() {
+        return this.delegate.setsIndependent();
+    }
+}
@@ -3,6 +3,7 @@ package com.tspowell.ttd.cache.invalidation;
 import com.tspowell.ttd.cache.UnsettableEntry;
 
 import java.util.PriorityQueue;
+import java.util.function.Predicate;
 
 /**
  * O(1) cache invalidation for the smallest element in a bucket
@@ -48,4 +49,22 @@ public class SmallestValueInvalidator<K, V extends Comparable<V>>
 
         return true;
     }
+
+    @Override
+    public UnsettableEntry<K, V> peek() {
+        return q.peek();
+    }
+
+    @Override
+    public UnsettableEntry<K, V> peek(final Predicate<? super UnsettableEntry<K, V>> evictable) {
+        UnsettableEntry<K, V> smallest = null;
+
+        for (final UnsettableEntry<K, V> entry : q) {
+            if (evictable.test(entry) && (smallest == null || q.comparator().compare(entry, smallest) < 0)) {
+                smallest = entry;
+            }
+        }
+
+        return smallest;
+    }
 }
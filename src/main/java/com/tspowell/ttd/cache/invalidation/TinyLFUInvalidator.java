@@ -0,0 +1,117 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.function.IntPredicate;
+
+/**
+ * TinyLFU admission in front of another invalidation policy.
+ *
+ * The wrapped policy still chooses the victim of a full set, but a new entry only replaces it if its key was
+ * seen more often recently than the victim's, according to a FrequencySketch of the hashes of every key the
+ * cache was asked to hold or reported as hit. Keys that are only seen once, like those of a scan, are kept out
+ * instead of pushing frequently used entries out of their sets. Works with any policy, including per-set
+ * CacheInvalidators through a CacheInvalidatorAdapter.
+ *
+ * The sketch is shared by all sets of the cache, so hits and inserts on different sets must not be reported
+ * concurrently, and setsIndependent() is false; ConcurrentSetAssociativeCache creates one per stripe and
+ * reports them under the stripe lock.
+ */
+public class TinyLFUInvalidator<K, V> implements IndexedCacheInvalidator<K, V> {
+    private final IndexedCacheInvalidator<K, V> delegate;
+    private final CacheSlots<K, V> slots;
+    private final FrequencySketch sketch;
+
+    /**
+     * @param delegate the policy choosing the victims
+     * @param capacity number of entries of the cache
+     * @param slots of the cache, to look up the hashes of victims
+     */
+    public TinyLFUInvalidator(
+            final IndexedCacheInvalidator<K, V> delegate, final int capacity, final CacheSlots<K, V> slots) {
+        this.delegate = delegate;
+        this.slots = slots;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * @param delegate creates the policy choosing the victims
+     * @return a factory wrapping the policy in TinyLFU admission
+     */
+    public static <K, V> IndexedCacheInvalidator.Factory<K, V> factory(
+            final IndexedCacheInvalidator.Factory<K, V> delegate) {
+        return (numberOfSets, entriesPerSet, slots) -> new TinyLFUInvalidator<>(
+                delegate.create(numberOfSets, entriesPerSet, slots), numberOfSets * entriesPerSet, slots);
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        this.sketch.increment(this.slots.hash(set, way));
+        this.delegate.onHit(set, way);
+    }
+
+    @Override
+    public void onUpdate(final int set, final int way) {
+        this.sketch.increment(this.slots.hash(set, way));
+        this.delegate.onUpdate(set, way);
+    }
+
+    @Override
+    public void onInsert(final int set, final int way) {
+        this.sketch.increment(this.slots.hash(set, way));
+        this.delegate.onInsert(set, way);
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        this.delegate.onRemove(set, way);
+    }
+
+    @Override
+    public int selectVictim(final int set) {
+        return this.delegate.selectVictim(set);
+    }
+
+    @Override
+    public int selectVictim(final int set, final int candidateHash) {
+        return this.delegate.selectVictim(set, candidateHash);
+    }
+
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        return this.delegate.selectVictim(set, candidateHash, evictable);
+    }
+
+    /**
+     * Admit the candidate if it is more frequent than the victim, counting the current request; ties keep the
+     * victim. A rejected candidate is counted here, an admitted one by onInsert().
+     */
+    @Override
+    public boolean admit(final int set, final int victimWay, final int candidateHash) {
+        final boolean admitted = this.sketch.frequency(candidateHash) + 1
+                > this.sketch.frequency(this.slots.hash(set, victimWay))
+                && this.delegate.admit(set, victimWay, candidateHash);
+
+        if (!admitted) {
+            this.sketch.increment(candidateHash);
+        }
+
+        return admitted;
+    }
+
+    @Override
+    public void onEvict(final int set, final int way) {
+        this.delegate.onEvict(set, way);
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        return this.delegate.reset(set);
+    }
+
+    /**
+     * False: the sketch is shared by all sets.
+     */
+    @Override
+    public boolean setsIndependent() {
+        return false;
+    }
+}
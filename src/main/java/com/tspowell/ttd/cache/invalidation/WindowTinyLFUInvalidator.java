@@ -0,0 +1,310 @@
+package com.tspowell.ttd.cache.invalidation;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * W-TinyLFU cache invalidation: an LRU admission window in front of a segmented LRU main region, with TinyLFU
+ * deciding what moves from the window to the main region.
+ *
+ * Every set splits its ways into three regions. New entries enter the window. When a full set needs a way and
+ * its window is at its target size, the window's least recently used entry competes with the main region's
+ * victim, the least recently used probationary entry: whichever key the FrequencySketch has seen more often
+ * stays, the window's entry moving to probation, and the other is evicted. A hit on a probationary entry
+ * promotes it to the protected segment, which holds at most 80% of the main region; the protected segment's
+ * least recently used entry is demoted back to probation to make room. Within a region, recency is kept as
+ * a use stamp per slot, and the least recently used entry is found by scanning the set's ways.
+ *
+ * The window's share of the ways adapts by hill climbing. The hit ratio is sampled over ten accesses per
+ * cache entry; if it dropped since the previous sample, the direction of the step is reversed, and the step
+ * decays towards a minimum. A recency-heavy workload grows the window, a frequency-heavy one shrinks it. The
+ * share is the same for all sets; a set's window is that share of its ways, dithered per set so that the
+ * window of the whole cache matches the share even when sets have few ways.
+ *
+ * The sketch, the use clock and the hill climber are shared by all sets of the cache, so sets must not be
+ * updated concurrently, and setsIndependent() is false; ConcurrentSetAssociativeCache creates one instance per
+ * stripe and updates it under the stripe lock.
+ */
+public class WindowTinyLFUInvalidator<K, V> implements IndexedCacheInvalidator<K, V> {
+    private static final int NONE = -1;
+    private static final IntPredicate ANY_WAY = way -> true;
+
+    private static final byte EMPTY = 0;
+    private static final byte WINDOW = 1;
+    private static final byte PROBATION = 2;
+    private static final byte PROTECTED = 3;
+
+    private static final double INITIAL_WINDOW = 0.01;
+    private static final double MAXIMUM_WINDOW = 0.8;
+    private static final double PROTECTED_SHARE = 0.8;
+    private static final double INITIAL_STEP = 0.0625;
+    private static final double MINIMUM_STEP = 0.005;
+    private static final double STEP_DECAY = 0.98;
+
+    private final int entriesPerSet;
+    private final CacheSlots<K, V> slots;
+    private final FrequencySketch sketch;
+
+    // Region and use stamp of every slot, and the window and protected counts of every set
+    private final byte[] regions;
+    private final long[] stamps;
+    private final int[] windowCounts;
+    private final int[] protectedCounts;
+    private long clock = 0;
+
+    // Hill climbing
+    private final int samplePeriod;
+    private double windowShare = INITIAL_WINDOW;
+    private double step = INITIAL_STEP;
+    private double previousHitRatio = Double.NaN;
+    private int sampleHits = 0;
+    private int sampleMisses = 0;
+
+    public WindowTinyLFUInvalidator(final int numberOfSets, final int entriesPerSet, final CacheSlots<K, V> slots) {
+        final int capacity = numberOfSets * entriesPerSet;
+
+        this.entriesPerSet = entriesPerSet;
+        this.slots = slots;
+        this.sketch = new FrequencySketch(capacity);
+        this.regions = new byte[capacity];
+        this.stamps = new long[capacity];
+        this.windowCounts = new int[numberOfSets];
+        this.protectedCounts = new int[numberOfSets];
+        this.samplePeriod = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the share of the ways currently given to the admission window
+     */
+    public double windowShare() {
+        return this.windowShare;
+    }
+
+    /**
+     * The target size of a set's window: its share of the ways, rounded up or down so that the average over
+     * all sets is the share.
+     */
+    private int windowTarget(final int set) {
+        final double dither = ((set * 0x9E3779B9) >>> 8) / (double) (1 << 24);
+
+        return (int) (this.windowShare * this.entriesPerSet + dither);
+    }
+
+    private int protectedLimit(final int set) {
+        return (int) ((this.entriesPerSet - windowTarget(set)) * PROTECTED_SHARE);
+    }
+
+    private void stamp(final int slot) {
+        this.stamps[slot] = ++this.clock;
+    }
+
+    private int leastRecent(final int set, final byte region) {
+        return leastRecent(set, region, ANY_WAY);
+    }
+
+    /**
+     * @return the least recently used way of a region in a set that the filter accepts, or NONE
+     */
+    private int leastRecent(final int set, final byte region, final IntPredicate evictable) {
+        final int base = set * this.entriesPerSet;
+        int victim = NONE;
+        long oldest = Long.MAX_VALUE;
+
+        for (int way = 0; way < this.entriesPerSet; ++way) {
+            if (this.regions[base + way] == region && this.stamps[base + way] < oldest && evictable.test(way)) {
+                oldest = this.stamps[base + way];
+                victim = way;
+            }
+        }
+
+        return victim;
+    }
+
+    private void setRegion(final int set, final int way, final byte region) {
+        final int slot = set * this.entriesPerSet + way;
+        final byte previous = this.regions[slot];
+
+        if (previous == WINDOW) {
+            this.windowCounts[set]--;
+        } else if (previous == PROTECTED) {
+            this.protectedCounts[set]--;
+        }
+
+        if (region == WINDOW) {
+            this.windowCounts[set]++;
+        } else if (region == PROTECTED) {
+            this.protectedCounts[set]++;
+        }
+
+        this.regions[slot] = region;
+    }
+
+    @Override
+    public void onHit(final int set, final int way) {
+        this.sampleHits++;
+        access(set, way);
+        climb();
+    }
+
+    @Override
+    public void onUpdate(final int set, final int way) {
+        access(set, way);
+    }
+
+    private void access(final int set, final int way) {
+        final int slot = set * this.entriesPerSet + way;
+
+        this.sketch.increment(this.slots.hash(set, way));
+        stamp(slot);
+
+        if (this.regions[slot] == PROBATION) {
+            setRegion(set, way, PROTECTED);
+
+            if (this.protectedCounts[set] > protectedLimit(set)) {
+                setRegion(set, leastRecent(set, PROTECTED), PROBATION);
+            }
+        }
+    }
+
+    /**
+     * New entries enter the window. If that takes the window over its target, its least recently used entry
+     * moves to probation: the set had room for it, or it won its place against the main region's victim in
+     * selectVictim(), which was evicted.
+     */
+    @Override
+    public void onInsert(final int set, final int way) {
+        this.sampleMisses++;
+        this.sketch.increment(this.slots.hash(set, way));
+        stamp(set * this.entriesPerSet + way);
+        setRegion(set, way, WINDOW);
+
+        if (this.windowCounts[set] > windowTarget(set)) {
+            setRegion(set, leastRecent(set, WINDOW), PROBATION);
+        }
+
+        climb();
+    }
+
+    @Override
+    public void onRemove(final int set, final int way) {
+        setRegion(set, way, EMPTY);
+    }
+
+    /**
+     * The new entry will enter the window. If the window has room for it, the main region gives up its victim.
+     * Otherwise the window's least recently used entry has to leave the window, and it takes the place of the
+     * main region's victim only if it is more frequent; it moves to probation in onInsert(). A set whose window
+     * target is zero has no window entry to compete, so the new entry itself competes with the victim, in
+     * admit(). Changes nothing, so it may be asked again.
+     */
+    @Override
+    public int selectVictim(final int set) {
+        return selectVictim(set, ANY_WAY);
+    }
+
+    /**
+     * As selectVictim(), with victims the filter rejects passed over. A window entry the filter rejects doesn't
+     * compete: the main region's victim goes.
+     */
+    @Override
+    public int selectVictim(final int set, final int candidateHash, final IntPredicate evictable) {
+        return selectVictim(set, evictable);
+    }
+
+    private int selectVictim(final int set, final IntPredicate evictable) {
+        int victim = leastRecent(set, PROBATION, evictable);
+        if (victim == NONE) {
+            victim = leastRecent(set, PROTECTED, evictable);
+        }
+
+        if (victim == NONE) {
+            return leastRecent(set, WINDOW, evictable);
+        }
+
+        if (this.windowCounts[set] < windowTarget(set)) {
+            return victim;
+        }
+
+        final int candidate = leastRecent(set, WINDOW);
+        if (candidate == NONE || !evictable.test(candidate) || this.sketch.frequency(this.slots.hash(set, candidate))
+                > this.sketch.frequency(this.slots.hash(set, victim))) {
+            return victim;
+        }
+
+        return candidate;
+    }
+
+    /**
+     * True if selectVictim() chose a main region victim only because the set has no window entry to compete.
+     */
+    private boolean competesWithNewEntry(final int set, final int victimWay) {
+        return this.regions[set * this.entriesPerSet + victimWay] != WINDOW
+                && this.windowCounts[set] == 0
+                && windowTarget(set) == 0;
+    }
+
+    /**
+     * Admits everything, except when the new entry competes with the victim directly, as for TinyLFU.
+     */
+    @Override
+    public boolean admit(final int set, final int victimWay, final int candidateHash) {
+        if (!competesWithNewEntry(set, victimWay)) {
+            return true;
+        }
+
+        final boolean admitted = this.sketch.frequency(candidateHash) + 1
+                > this.sketch.frequency(this.slots.hash(set, victimWay));
+
+        if (!admitted) {
+            this.sampleMisses++;
+            this.sketch.increment(candidateHash);
+            climb();
+        }
+
+        return admitted;
+    }
+
+    @Override
+    public boolean reset(final int set) {
+        final int base = set * this.entriesPerSet;
+
+        Arrays.fill(this.regions, base, base + this.entriesPerSet, EMPTY);
+        this.windowCounts[set] = 0;
+        this.protectedCounts[set] = 0;
+
+        return true;
+    }
+
+    /**
+     * False: the sketch, the clock and the hill climber are shared by all sets.
+     */
+    @Override
+    public boolean setsIndependent() {
+        return false;
+    }
+
+    /**
+     * At the end of a sample, move the window share a step in the direction that last improved the hit ratio.
+     */
+    private void climb() {
+        final int accesses = this.sampleHits + this.sampleMisses;
+        if (accesses < this.samplePeriod) {
+            return;
+        }
+
+        final double hitRatio = (double) this.sampleHits / accesses;
+
+        if (!Double.isNaN(this.previousHitRatio)) {
+            if (hitRatio < this.previousHitRatio) {
+                this.step = -this.step;
+            }
+
+            this.windowShare = Math.max(0, Math.min(MAXIMUM_WINDOW, this.windowShare + this.step));
+            this.step = Math.copySign(Math.max(MINIMUM_STEP, Math.abs(this.step) * STEP_DECAY), this.step);
+        }
+
+        this.previousHitRatio = hitRatio;
+        this.sampleHits = 0;
+        this.sampleMisses = 0;
+    }
+}
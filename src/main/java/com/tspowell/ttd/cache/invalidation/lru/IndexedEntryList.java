@@ -0,0 +1,172 @@
+package com.tspowell.ttd.cache.invalidation.lru;
+
+import com.tspowell.ttd.cache.IndexedEntry;
+import com.tspowell.ttd.cache.UnsettableEntry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * The use-ordered list of a single bucket, indexed by the way of each entry.
+ * Keeps the entry for every linked way so that an invalidator can unset it.
+ *
+ * Entries that are IndexedEntries are linked at their way. Once an entry that doesn't know its way is
+ * touched, every entry is given a position by key instead, as the key-mapped linked list used to do: slower,
+ * but it works for any UnsettableEntry.
+ */
+public abstract class IndexedEntryList<K, V> extends IndexedLRUList {
+
+    private UnsettableEntry<K, V>[] entries = newEntries(0);
+
+    // Positions by key, and positions freed for reuse; null while every entry has known its way
+    private Map<K, Integer> positions;
+    private Deque<Integer> freePositions;
+    private int positionCount;
+
+    protected IndexedEntryList() {
+        super(1, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> UnsettableEntry<K, V>[] newEntries(final int length) {
+        return (UnsettableEntry<K, V>[]) new UnsettableEntry<?, ?>[length];
+    }
+
+    /**
+     * Switch to positions by key, keeping every linked entry at its way.
+     */
+    private void positionByKey() {
+        this.positions = new HashMap<>();
+        this.freePositions = new ArrayDeque<>();
+        this.positionCount = this.entries.length;
+
+        for (int way = 0; way < this.entries.length; ++way) {
+            if (this.entries[way] != null) {
+                this.positions.put(this.entries[way].getKey(), way);
+            } else {
+                this.freePositions.push(way);
+            }
+        }
+    }
+
+    /**
+     * @param entry to find
+     * @param link true to give the entry a position if it has none
+     * @return the position of the entry, or NONE if it has none and link is false
+     */
+    private int positionOf(final UnsettableEntry<K, V> entry, final boolean link) {
+        if (this.positions == null) {
+            if (entry instanceof IndexedEntry) {
+                return ((IndexedEntry<K, V>) entry).way();
+            }
+
+            positionByKey();
+        }
+
+        final Integer position = this.positions.get(entry.getKey());
+        if (position != null) {
+            return position;
+        }
+
+        if (!link) {
+            return NONE;
+        }
+
+        final int assigned = this.freePositions.isEmpty() ? this.positionCount++ : this.freePositions.pop();
+        this.positions.put(entry.getKey(), assigned);
+
+        return assigned;
+    }
+
+    /**
+     * Forget the entry at a position that was unlinked.
+     */
+    private void release(final int position) {
+        if (this.positions != null) {
+            this.positions.remove(this.entries[position].getKey());
+            this.freePositions.push(position);
+        }
+
+        this.entries[position] = null;
+    }
+
+    /**
+     * Move the entry to the most recently used end of the list, linking it if this is its first use.
+     * @param entry used
+     */
+    protected void markRecentlyUsed(final UnsettableEntry<K, V> entry) {
+        final int way = positionOf(entry, true);
+
+        if (way >= this.entries.length) {
+            ensureCapacity(way + 1);
+
+            final UnsettableEntry<K, V>[] grown = newEntries(Math.max(way + 1, this.entries.length * 2));
+            System.arraycopy(this.entries, 0, grown, 0, this.entries.length);
+            this.entries = grown;
+        }
+
+        this.entries[way] = entry;
+        markRecentlyUsed(0, way);
+    }
+
+    /**
+     * Remove the entry from the list, if it is linked
+     * @param entry to remove
+     */
+    protected void removeEntry(final UnsettableEntry<K, V> entry) {
+        final int way = positionOf(entry, false);
+
+        if (way != NONE && way < this.entries.length && contains(0, way)) {
+            removeEntry(0, way);
+            release(way);
+        }
+    }
+
+    /**
+     * @param way linked, or NONE
+     * @return the entry at a way, or null for NONE
+     */
+    protected UnsettableEntry<K, V> entryAt(final int way) {
+        return way == NONE ? null : this.entries[way];
+    }
+
+    /**
+     * @param fromLeastRecent true to search from the least recently used end, false from the most recently used
+     * @param accepted filter
+     * @return the first linked entry the filter accepts, or null
+     */
+    protected UnsettableEntry<K, V> firstEntry(
+            final boolean fromLeastRecent,
+            final Predicate<? super UnsettableEntry<K, V>> accepted) {
+        for (int way = fromLeastRecent ? head(0) : tail(0);
+                way != NONE;
+                way = fromLeastRecent ? next(0, way) : previous(0, way)) {
+            if (accepted.test(this.entries[way])) {
+                return this.entries[way];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Unlink and unset the entry at a way
+     * @param way to unset, or NONE
+     * @return true if an entry was unset
+     */
+    protected boolean unsetEntry(final int way) {
+        if (way == NONE) {
+            return false;
+        }
+
+        final UnsettableEntry<K, V> entry = this.entries[way];
+        removeEntry(0, way);
+        release(way);
+        entry.unset();
+
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.tspowell.ttd.cache.invalidation.lru;
+
+import java.util.Arrays;
+
+/**
+ * A use-ordered doubly linked list over the way indices of one or more sets.
+ *
+ * Has the same semantics as LinkedLRUList: the head of a set is its least recently used way and the tail
+ * the most recently used. The links are kept in flat int arrays addressed by {@code set * entriesPerSet + way},
+ * so marking or removing a way is O(1) with no hashing and no allocation.
+ */
+public class IndexedLRUList {
+
+    /**
+     * Returned by head() and tail() for an empty set
+     */
+    public static final int NONE = -1;
+
+    // Marks a way that is not linked into its set's list
+    private static final int UNLINKED = -2;
+
+    private final int[] head;
+    private final int[] tail;
+    private int entriesPerSet;
+    private int[] prev;
+    private int[] next;
+
+    public IndexedLRUList(final int numberOfSets, final int entriesPerSet) {
+        this.head = new int[numberOfSets];
+        this.tail = new int[numberOfSets];
+        this.entriesPerSet = entriesPerSet;
+        this.prev = new int[numberOfSets * entriesPerSet];
+        this.next = new int[numberOfSets * entriesPerSet];
+
+        Arrays.fill(this.head, NONE);
+        Arrays.fill(this.tail, NONE);
+        Arrays.fill(this.prev, UNLINKED);
+    }
+
+    public int head(final int set) {
+        return this.head[set];
+    }
+
+    public int tail(final int set) {
+        return this.tail[set];
+    }
+
+    /**
+     * @return the way after this one, towards the most recently used, or NONE
+     */
+    public int next(final int set, final int way) {
+        return this.next[set * this.entriesPerSet + way];
+    }
+
+    /**
+     * @return the way before this one, towards the least recently used, or NONE
+     */
+    public int previous(final int set, final int way) {
+        return this.prev[set * this.entriesPerSet + way];
+    }
+
+    public boolean contains(final int set, final int way) {
+        return way < this.entriesPerSet && this.prev[set * this.entriesPerSet + way] != UNLINKED;
+    }
+
+    /**
+     * Remove the way from the set's linked list
+     * @param set the way belongs to
+     * @param way to remove
+     */
+    protected void removeEntry(final int set, final int way) {
+        if (!contains(set, way)) {
+            return;
+        }
+
+        final int base = set * this.entriesPerSet;
+        final int p = this.prev[base + way];
+        final int n = this.next[base + way];
+
+        if (p == NONE) {
+            this.head[set] = n;
+        } else {
+            this.next[base + p] = n;
+        }
+
+        if (n == NONE) {
+            this.tail[set] = p;
+        } else {
+            this.prev[base + n] = p;
+        }
+
+        this.prev[base + way] = UNLINKED;
+    }
+
+    protected void markRecentlyUsed(final int set, final int way) {
+        removeEntry(set, way);
+
+        final int base = set * this.entriesPerSet;
+        final int t = this.tail[set];
+
+        this.prev[base + way] = t;
+        this.next[base + way] = NONE;
+
+        // First item in list
+        if (t == NONE) {
+            this.head[set] = way;
+        } else {
+            this.next[base + t] = way;
+        }
+
+        this.tail[set] = way;
+    }
+
+    /**
+     * Unlink every way of a set.
+     * @param set to empty
+     */
+    protected void clearSet(final int set) {
+        this.head[set] = NONE;
+        this.tail[set] = NONE;
+
+        Arrays.fill(this.prev, set * this.entriesPerSet, (set + 1) * this.entriesPerSet, UNLINKED);
+    }
+
+    /**
+     * Grow the lists to hold at least the given number of ways per set. Used when the associativity isn't
+     * known up front; the arrays are at least doubled, so this allocates a logarithmic number of times.
+     *
+     * @param minimumEntriesPerSet required ways per set
+     */
+    protected void ensureCapacity(final int minimumEntriesPerSet) {
+        if (minimumEntriesPerSet <= this.entriesPerSet) {
+            return;
+        }
+
+        final int numberOfSets = this.head.length;
+        final int ways = Math.max(minimumEntriesPerSet, this.entriesPerSet * 2);
+        final int[] newPrev = new int[numberOfSets * ways];
+        final int[] newNext = new int[numberOfSets * ways];
+
+        Arrays.fill(newPrev, UNLINKED);
+
+        for (int set = 0; set < numberOfSets; ++set) {
+            System.arraycopy(this.prev, set * this.entriesPerSet, newPrev, set * ways, this.entriesPerSet);
+            System.arraycopy(this.next, set * this.entriesPerSet, newNext, set * ways, this.entriesPerSet);
+        }
+
+        this.prev = newPrev;
+        this.next = newNext;
+        this.entriesPerSet = ways;
+    }
+}
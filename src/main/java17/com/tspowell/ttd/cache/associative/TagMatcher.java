@@ -0,0 +1,53 @@
+package com.tspowell.ttd.cache.associative;
+
+/**
+ * Matches the fingerprint tags of up to 64 contiguous ways against a probe's tag.
+ *
+ * Wide sets are compared with the Vector API when the jdk.incubator.vector module has been added to the JVM
+ * (--add-modules jdk.incubator.vector). Otherwise, and for narrow sets, this falls back to the scalar loop.
+ */
+final class TagMatcher {
+
+    // Below this many ways the scalar loop over the occupied ways is faster; ProbeBenchmark only shows a win at 64
+    private static final int MIN_VECTOR_LENGTH = 64;
+
+    private static final boolean VECTORIZED = vectorApiAvailable();
+
+    private TagMatcher() {
+    }
+
+    private static boolean vectorApiAvailable() {
+        try {
+            return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() &&
+                    VectorTagMatcher.SPECIES.length() > 1;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param tags the tag array
+     * @param offset of the first way to match
+     * @param length number of ways to match, at most 64
+     * @param tag to look for
+     * @param occupied bitmap of the live ways among them
+     * @return the bitmap of live ways whose tag equals the given tag
+     */
+    static long candidates(final byte[] tags, final int offset, final int length, final byte tag, final long occupied) {
+        if (VECTORIZED && length >= MIN_VECTOR_LENGTH) {
+            return VectorTagMatcher.matches(tags, offset, length, tag) & occupied;
+        }
+
+        long candidates = 0;
+
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            final int way = Long.numberOfTrailingZeros(bits);
+
+            if (tags[offset + way] == tag) {
+                candidates |= 1L << way;
+            }
+        }
+
+        return candidates;
+    }
+}
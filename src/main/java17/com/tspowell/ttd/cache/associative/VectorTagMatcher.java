@@ -0,0 +1,40 @@
+package com.tspowell.ttd.cache.associative;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Compares tags a full vector at a time. Only loaded once TagMatcher has found the Vector API.
+ */
+final class VectorTagMatcher {
+    static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorTagMatcher() {
+    }
+
+    /**
+     * @return the bitmap of ways in [offset, offset + length) whose tag equals the given tag
+     */
+    static long matches(final byte[] tags, final int offset, final int length, final byte tag) {
+        final int lanes = SPECIES.length();
+        final int whole = SPECIES.loopBound(length);
+        long matches = 0;
+        int i = 0;
+
+        for (; i < whole; i += lanes) {
+            matches |= ByteVector.fromArray(SPECIES, tags, offset + i).eq(tag).toLong() << i;
+        }
+
+        // Masked loads are slow on some hardware, so they are only used for the tail of the set
+        if (i < length) {
+            final VectorMask<Byte> inRange = SPECIES.indexInRange(i, length);
+            final ByteVector vector = ByteVector.fromArray(SPECIES, tags, offset + i, inRange);
+
+            matches |= vector.compare(VectorOperators.EQ, tag, inRange).toLong() << i;
+        }
+
+        return matches;
+    }
+}
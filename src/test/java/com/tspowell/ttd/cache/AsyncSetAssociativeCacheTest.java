@@ -0,0 +1,162 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.associative.AsyncSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetIndexers;
+import com.tspowell.ttd.cache.invalidation.ARCInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedMRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.MRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.WindowTinyLFUInvalidator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test the cache of future values.
+ */
+public class AsyncSetAssociativeCacheTest {
+
+    /**
+     * Queues the loads until the test runs them.
+     */
+    private static final class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(final Runnable command) {
+            this.tasks.add(command);
+        }
+
+        void runAll() {
+            for (final Runnable task : this.tasks) {
+                task.run();
+            }
+            this.tasks.clear();
+        }
+    }
+
+    @Test
+    public void testMissesShareOneLoad() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final AsyncSetAssociativeCache<String, Integer> cache = new AsyncSetAssociativeCache<>(4, 4, executor);
+        final AtomicInteger loads = new AtomicInteger();
+
+        final CompletableFuture<Integer> first = cache.get("abc", key -> loads.incrementAndGet() + key.length());
+        final CompletableFuture<Integer> second = cache.get("abc", key -> -1);
+
+        assertSame(first, second);
+        assertFalse(first.isDone());
+
+        executor.runAll();
+
+        assertEquals(Integer.valueOf(4), first.get());
+        assertEquals(1, loads.get());
+        assertSame(first, cache.getIfPresent("abc"));
+    }
+
+    @Test
+    public void testFailedLoadsAreRemoved() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final AsyncSetAssociativeCache<String, Integer> cache = new AsyncSetAssociativeCache<>(4, 4, executor);
+
+        final CompletableFuture<Integer> failed = cache.get("a", key -> {
+            throw new UnsupportedOperationException();
+        });
+        final CompletableFuture<Integer> empty = cache.get("b", key -> null);
+        assertEquals(2, cache.size());
+
+        executor.runAll();
+
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnsupportedOperationException);
+        }
+        assertNull(empty.get());
+        assertNull(cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+
+        cache.put("c", CompletableFuture.completedFuture(3));
+        final CompletableFuture<Integer> cancelled = new CompletableFuture<>();
+        cache.put("d", cancelled);
+        cancelled.cancel(false);
+
+        assertEquals(1, cache.size());
+        assertEquals(Integer.valueOf(3), cache.getIfPresent("c").get());
+    }
+
+    @Test
+    public void testPendingLoadsAreNotEvicted() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final AsyncSetAssociativeCache<String, Integer> cache = new AsyncSetAssociativeCache<>(
+                1, 2, IndexedLRUInvalidator::new, SetIndexers.MODULO, 1, executor);
+
+        // "a" is the least recently used, but still loading
+        final CompletableFuture<Integer> pending = cache.get("a", String::length);
+        cache.put("b", CompletableFuture.completedFuture(2));
+        cache.put("c", CompletableFuture.completedFuture(3));
+
+        assertSame(pending, cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+
+        // Once every way is pending, the policy's choice goes
+        cache.get("d", String::length);
+        cache.get("e", String::length);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getIfPresent("e"));
+
+        executor.runAll();
+        assertEquals(Integer.valueOf(1), pending.get());
+    }
+
+    @Test
+    public void testPendingLoadsAreNotEvictedByAnyPolicy() {
+        final List<IndexedCacheInvalidator.Factory<String, CompletableFuture<Integer>>> policies = Arrays.asList(
+                IndexedLRUInvalidator::new,
+                IndexedMRUInvalidator::new,
+                PseudoLRUInvalidator::new,
+                ARCInvalidator::new,
+                WindowTinyLFUInvalidator::new,
+                CacheInvalidatorAdapter.factory(LRUInvalidator::new),
+                CacheInvalidatorAdapter.factory(MRUInvalidator::new));
+
+        for (final IndexedCacheInvalidator.Factory<String, CompletableFuture<Integer>> policy : policies) {
+            // The pending load is inserted first or last, so that it is the victim of LRU or of MRU
+            for (final boolean pendingFirst : new boolean[] {true, false}) {
+                final AsyncSetAssociativeCache<String, Integer> cache = new AsyncSetAssociativeCache<>(
+                        1, 2, policy, SetIndexers.MODULO, 1, new ManualExecutor());
+
+                if (pendingFirst) {
+                    cache.get("pending", String::length);
+                    cache.put("done", CompletableFuture.completedFuture(4));
+                } else {
+                    cache.put("done", CompletableFuture.completedFuture(4));
+                    cache.get("pending", String::length);
+                }
+
+                // Twice, so that W-TinyLFU has seen the new key more often than the victim and admits it
+                cache.put("new", CompletableFuture.completedFuture(3));
+                cache.put("new", CompletableFuture.completedFuture(3));
+
+                final String message = "policy " + policies.indexOf(policy) + ", pending first: " + pendingFirst;
+                assertNotNull(message, cache.getIfPresent("pending"));
+                assertNotNull(message, cache.getIfPresent("new"));
+                assertNull(message, cache.getIfPresent("done"));
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.associative.ConcurrentSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.LoadingSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.RefreshPolicy;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetIndexers;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test the lock-striped cache.
+ */
+public class ConcurrentSetAssociativeCacheTest {
+
+    @Test
+    public void testMatchesSetAssociativeCache() {
+        final ConcurrentSetAssociativeCache<Integer, Integer> cache = new ConcurrentSetAssociativeCache<>(
+                24, 4, IndexedLRUInvalidator::new, SetIndexers.FIBONACCI, 5);
+        final SetAssociativeCache<Integer, Integer> reference =
+                new SetAssociativeCache<>(24, 4, IndexedLRUInvalidator::new, SetIndexers.FIBONACCI);
+        final Random random = new Random(23);
+
+        // Five stripes of five sets round to six stripes of four
+        assertEquals(6, cache.stripes());
+        assertEquals(24 * 4, cache.capacity());
+
+        for (int i = 0; i < 50000; ++i) {
+            final int key = random.nextInt(400);
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.remove(key), cache.remove(key));
+                    break;
+                case 1:
+                    final Integer previous = reference.containsKey(key) ? reference.get(key) : null;
+                    reference.put(key, i);
+                    assertEquals(previous, cache.put(key, i));
+                    break;
+                default:
+                    assertEquals(reference.get(key), cache.get(key));
+            }
+        }
+
+        assertEquals(reference.size(), cache.size());
+        assertEquals(reference.keySet(), cache.keySet());
+        assertEquals(new HashMap<>(reference), new HashMap<>(cache));
+    }
+
+    @Test
+    public void testStripesOfAnyGeometryMapKeysLikeOneCache() {
+        for (int numberOfSets = 1; numberOfSets <= 40; ++numberOfSets) {
+            for (int concurrencyLevel = 1; concurrencyLevel <= 9; ++concurrencyLevel) {
+                final ConcurrentSetAssociativeCache<Integer, Integer> cache = new ConcurrentSetAssociativeCache<>(
+                        numberOfSets, 2, IndexedLRUInvalidator::new, SetIndexers.MODULO, concurrencyLevel);
+                final SetAssociativeCache<Integer, Integer> reference = new SetAssociativeCache<>(
+                        numberOfSets, 2, IndexedLRUInvalidator::new, SetIndexers.MODULO);
+
+                assertTrue(cache.stripes() <= numberOfSets);
+                assertEquals(numberOfSets * 2, cache.capacity());
+
+                for (int key = 0; key < 200; ++key) {
+                    cache.put(key, key);
+                    reference.put(key, key);
+                }
+
+                assertEquals(reference.keySet(), cache.keySet());
+            }
+        }
+    }
+
+    @Test
+    public void testConditionalUpdates() {
+        final ConcurrentSetAssociativeCache<String, Integer> cache = new ConcurrentSetAssociativeCache<>(4, 4);
+
+        assertNull(cache.putIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+        assertFalse(cache.replace("a", 2, 3));
+        assertTrue(cache.replace("a", 1, 3));
+        assertEquals(Integer.valueOf(3), cache.replace("a", 4));
+        assertNull(cache.replace("b", 4));
+        assertFalse(cache.remove("a", 3));
+        assertTrue(cache.remove("a", 4));
+        assertTrue(cache.isEmpty());
+
+        assertEquals(Integer.valueOf(5), cache.computeIfAbsent("c", key -> 5));
+        assertEquals(Integer.valueOf(6), cache.merge("c", 1, Integer::sum));
+        assertNull(cache.computeIfPresent("c", (key, value) -> null));
+        assertFalse(cache.containsKey("c"));
+    }
+
+    @Test
+    public void testConditionalUpdatesAreNotHits() {
+        final AtomicInteger hits = new AtomicInteger();
+        final AtomicInteger updates = new AtomicInteger();
+        final ConcurrentSetAssociativeCache<String, Integer> cache = new ConcurrentSetAssociativeCache<>(4, 4,
+                (numberOfSets, entriesPerSet, slots) ->
+                        new IndexedLRUInvalidator<String, Integer>(numberOfSets, entriesPerSet, slots) {
+                            @Override
+                            public void onHit(final int set, final int way) {
+                                hits.incrementAndGet();
+                                super.onHit(set, way);
+                            }
+
+                            @Override
+                            public void onUpdate(final int set, final int way) {
+                                updates.incrementAndGet();
+                                super.onHit(set, way);
+                            }
+                        });
+
+        cache.put("a", 1);
+        assertEquals(Integer.valueOf(1), cache.putIfAbsent("a", 2));
+        assertFalse(cache.replace("a", 2, 3));
+        assertFalse(cache.remove("a", 2));
+        assertNull(cache.computeIfPresent("b", (key, value) -> value + 1));
+        assertEquals(0, updates.get());
+
+        assertTrue(cache.replace("a", 1, 3));
+        assertEquals(Integer.valueOf(4), cache.computeIfPresent("a", (key, value) -> value + 1));
+        assertEquals(Integer.valueOf(5), cache.compute("a", (key, value) -> value + 1));
+        assertEquals(Integer.valueOf(6), cache.merge("a", 1, Integer::sum));
+        assertEquals(4, updates.get());
+
+        assertTrue(cache.remove("a", 6));
+        assertEquals(Integer.valueOf(7), cache.computeIfAbsent("a", key -> 7));
+        assertEquals(0, hits.get());
+    }
+
+    @Test
+    public void testParallelMerges() throws Exception {
+        final int threads = 8;
+        final int keys = 64;
+        final int increments = 20000;
+
+        // Large enough that nothing is evicted
+        final ConcurrentSetAssociativeCache<Integer, Integer> cache = new ConcurrentSetAssociativeCache<>(
+                64, 8, IndexedLRUInvalidator::new, SetIndexers.MODULO, 16);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; ++t) {
+                final int seed = t;
+                futures.add(executor.submit(() -> {
+                    final Random random = new Random(seed);
+                    start.await();
+
+                    for (int i = 0; i < increments; ++i) {
+                        cache.merge(random.nextInt(keys), 1, Integer::sum);
+                        cache.get(random.nextInt(keys));
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        int total = 0;
+        for (final Map.Entry<Integer, Integer> entry : cache.entrySet()) {
+            total += entry.getValue();
+        }
+
+        assertEquals(keys, cache.size());
+        assertEquals(threads * increments, total);
+    }
+
+    @Test
+    public void testOptimisticReadsSeeConsistentValues() throws Exception {
+        final int threads = 8;
+
+        // Small enough that writers keep evicting and reusing the ways readers are probing
+        final ConcurrentSetAssociativeCache<Integer, String> cache = new ConcurrentSetAssociativeCache<>(
+                8, 4, IndexedLRUInvalidator::new, SetIndexers.MODULO, 2);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; ++t) {
+                final boolean writer = t % 4 == 0;
+                final Random random = new Random(t);
+
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200000; ++i) {
+                        final int key = random.nextInt(256);
+
+                        if (writer) {
+                            cache.put(key, "v" + key);
+                        } else {
+                            final String value = cache.get(key);
+                            assertTrue(value == null || value.equals("v" + key));
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(cache.capacity(), cache.size());
+    }
+
+    /**
+     * Replay skewed read-through traces on a cache, one thread per trace, and return the fraction of reads
+     * that hit.
+     */
+    private static double hitRatio(final Map<Integer, Integer> cache, final int[][] traces) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(traces.length);
+        final List<Future<Integer>> futures = new ArrayList<>();
+        int hits = 0;
+        int reads = 0;
+
+        try {
+            for (final int[] trace : traces) {
+                futures.add(executor.submit(() -> {
+                    int traceHits = 0;
+
+                    for (final int key : trace) {
+                        if (cache.get(key) != null) {
+                            traceHits++;
+                        } else {
+                            cache.put(key, key);
+                        }
+                    }
+
+                    return traceHits;
+                }));
+
+                reads += trace.length;
+            }
+
+            for (final Future<Integer> future : futures) {
+                hits += future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return (double) hits / reads;
+    }
+
+    @Test
+    public void testBufferedRecencyHitRatioTracksLRU() throws Exception {
+        final int numberOfSets = 64;
+        final int entriesPerSet = 8;
+        final Random random = new Random(29);
+        final int[][] traces = new int[4][100000];
+
+        for (final int[] trace : traces) {
+            for (int i = 0; i < trace.length; ++i) {
+                trace[i] = (int) (numberOfSets * entriesPerSet * 4 * Math.pow(random.nextDouble(), 3));
+            }
+        }
+
+        // Exact LRU: every hit is applied, under one lock
+        final double lru = hitRatio(
+                Collections.synchronizedMap(new SetAssociativeCache<>(numberOfSets, entriesPerSet)), traces);
+        final double buffered = hitRatio(new ConcurrentSetAssociativeCache<>(
+                numberOfSets, entriesPerSet, IndexedLRUInvalidator::new, SetIndexers.MODULO, 4), traces);
+
+        assertTrue("LRU " + lru + ", buffered " + buffered + ", delta " + (buffered - lru),
+                Math.abs(buffered - lru) < 0.02);
+    }
+
+    @Test
+    public void testSingleFlightLoads() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // One stripe, so that a load held the lock over the whole cache if it held it at all
+        final LoadingSetAssociativeCache<String, Integer> cache = new LoadingSetAssociativeCache<>(
+                4, 4, IndexedLRUInvalidator::new, SetIndexers.MODULO, 1, key -> {
+                    if (key.equals("slow")) {
+                        loads.incrementAndGet();
+                        loading.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+
+                    return key.length();
+                });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(executor.submit(() -> cache.getOrLoad("slow")));
+            }
+
+            // Other keys load while "slow" is in flight
+            loading.await();
+            assertEquals(Integer.valueOf(5), cache.getOrLoad("quick"));
+            release.countDown();
+
+            for (final Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(4), result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(Integer.valueOf(4), cache.get("slow"));
+    }
+
+    @Test
+    public void testFailedAndRecursiveLoads() {
+        final ConcurrentSetAssociativeCache<String, Integer> cache = new ConcurrentSetAssociativeCache<>(4, 4);
+
+        try {
+            cache.computeIfAbsent("a", key -> {
+                throw new UnsupportedOperationException();
+            });
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertFalse(cache.containsKey("a"));
+        }
+
+        // A failed load isn't remembered, and null isn't cached
+        assertNull(cache.computeIfAbsent("a", key -> null));
+        assertEquals(Integer.valueOf(1), cache.computeIfAbsent("a", key -> 1));
+
+        try {
+            cache.computeIfAbsent("b", key -> cache.computeIfAbsent("b", again -> 2));
+            fail();
+        } catch (IllegalStateException e) {
+            assertFalse(cache.containsKey("b"));
+        }
+
+        // A checked exception thrown sneakily ends the load too, or the next call would wait for it
+        try {
+            cache.computeIfAbsent("c", key -> sneakyThrow(new IOException()));
+            fail();
+        } catch (Exception e) {
+            assertTrue(e instanceof IOException);
+        }
+
+        assertEquals(Integer.valueOf(3), cache.computeIfAbsent("c", key -> 3));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Throwable> T sneakyThrow(final Throwable e) throws E {
+        throw (E) e;
+    }
+
+    @Test
+    public void testRefreshAfterWrite() {
+        final AtomicLong now = new AtomicLong();
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingSetAssociativeCache<String, Integer> cache = new LoadingSetAssociativeCache<>(4, 4,
+                key -> loads.incrementAndGet(),
+                RefreshPolicy.afterWrite(10, TimeUnit.SECONDS).executor(Runnable::run).ticker(now::get));
+
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("a"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("a"));
+        assertEquals(1, loads.get());
+
+        // Due: the read gets the old value, and triggers the reload
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(Integer.valueOf(1), cache.getOrLoad("a"));
+        assertEquals(2, loads.get());
+        assertEquals(Integer.valueOf(2), cache.getOrLoad("a"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testEarlyRefresh() {
+        final AtomicLong now = new AtomicLong();
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingSetAssociativeCache<String, Integer> cache = new LoadingSetAssociativeCache<>(4, 4,
+                key -> {
+                    // Slow enough that an entry 1ms from its deadline is refreshed early, most of the time
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return loads.incrementAndGet();
+                },
+                RefreshPolicy.early(1, TimeUnit.HOURS, 1.0).executor(Runnable::run).ticker(now::get));
+
+        cache.getOrLoad("a");
+
+        // Far from the deadline, an early refresh is vanishingly unlikely
+        now.set(TimeUnit.MINUTES.toNanos(30));
+        for (int i = 0; i < 100; ++i) {
+            cache.getOrLoad("a");
+        }
+        assertEquals(1, loads.get());
+
+        now.set(TimeUnit.HOURS.toNanos(1) - TimeUnit.MILLISECONDS.toNanos(1));
+        for (int i = 0; i < 100 && loads.get() == 1; ++i) {
+            cache.getOrLoad("a");
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testBatchedGetAllAndPutAll() {
+        final ConcurrentSetAssociativeCache<Integer, Integer> cache = new ConcurrentSetAssociativeCache<>(
+                24, 4, IndexedLRUInvalidator::new, SetIndexers.FIBONACCI, 5);
+        final SetAssociativeCache<Integer, Integer> reference =
+                new SetAssociativeCache<>(24, 4, IndexedLRUInvalidator::new, SetIndexers.FIBONACCI);
+        final Random random = new Random(31);
+
+        final Map<Integer, Integer> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 300; ++i) {
+            entries.put(random.nextInt(400), i);
+        }
+
+        cache.putAll(entries);
+        reference.putAll(entries);
+        assertEquals(new HashMap<>(reference), new HashMap<>(cache));
+
+        final Integer[] keys = new Integer[200];
+        final Integer[] values = new Integer[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = random.nextInt(400);
+        }
+
+        int expectedHits = 0;
+        for (final Integer key : keys) {
+            expectedHits += reference.containsKey(key) ? 1 : 0;
+        }
+
+        assertEquals(expectedHits, cache.getAll(keys, values));
+        for (int i = 0; i < keys.length; ++i) {
+            assertEquals(reference.get(keys[i]), values[i]);
+        }
+
+        assertEquals(reference.getAll(Arrays.asList(keys)), cache.getAll(Arrays.asList(keys)));
+    }
+}
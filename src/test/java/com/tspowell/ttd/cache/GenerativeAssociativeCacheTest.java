@@ -1,33 +1,58 @@
 package com.tspowell.ttd.cache;
 
 import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.invalidation.ARCInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
 import org.junit.Test;
 
 import javax.cache.Cache;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class GenerativeAssociativeCacheTest {
 
     @Test
     public void generativeTest() {
+        generate(IndexedLRUInvalidator::new);
+    }
+
+    @Test
+    public void generativePseudoLRUTest() {
+        generate(PseudoLRUInvalidator::new);
+    }
+
+    @Test
+    public void generativeARCTest() {
+        generate(ARCInvalidator::new);
+    }
+
+    private void generate(final IndexedCacheInvalidator.Factory<Integer, String> invalidator) {
         int permutations = 32;
 
         for (int numberOfSets = 1; numberOfSets < permutations; ++numberOfSets) {
             for (int entriesPerSet = 1; entriesPerSet < permutations; ++entriesPerSet) {
                 for (int i = 1; i <= 10; ++i) {
-                    testIteratorAndRetrieveInOtherOrder(numberOfSets, entriesPerSet, i);
+                    testIteratorAndRetrieveInOtherOrder(numberOfSets, entriesPerSet, i, invalidator);
                 }
             }
         }
     }
 
-    private void testIteratorAndRetrieveInOtherOrder(int numberOfSets, int entriesPerSet, int multiplier) {
+    private void testIteratorAndRetrieveInOtherOrder(
+            int numberOfSets,
+            int entriesPerSet,
+            int multiplier,
+            IndexedCacheInvalidator.Factory<Integer, String> invalidator) {
         final int totalEntries = numberOfSets * entriesPerSet;
 
-        final SetAssociativeCache<Integer, String> cache = new SetAssociativeCache<>(numberOfSets, entriesPerSet);
+        final SetAssociativeCache<Integer, String> cache =
+                new SetAssociativeCache<>(numberOfSets, entriesPerSet, invalidator);
 
         for (int i = 1; i <= totalEntries * multiplier; ++i) {
             cache.put(i, String.valueOf(i));
@@ -48,4 +73,45 @@ public class GenerativeAssociativeCacheTest {
             assertEquals(elem.getValue(), cache.get(elem.getKey()));
         }
     }
+
+    /**
+     * Replay a skewed read-through workload, and return the fraction of reads that hit.
+     */
+    static double hitRatio(
+            final int numberOfSets,
+            final int entriesPerSet,
+            final IndexedCacheInvalidator.Factory<Integer, String> invalidator) {
+        final SetAssociativeCache<Integer, String> cache =
+                new SetAssociativeCache<>(numberOfSets, entriesPerSet, invalidator);
+        final Random random = new Random(numberOfSets * 31 + entriesPerSet);
+        final int universe = numberOfSets * entriesPerSet * 4;
+        final int reads = 50000;
+        int hits = 0;
+
+        for (int i = 0; i < reads; ++i) {
+            final double skewed = Math.pow(random.nextDouble(), 3);
+            final Integer key = (int) (skewed * universe);
+
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, String.valueOf(key));
+            }
+        }
+
+        return (double) hits / reads;
+    }
+
+    @Test
+    public void pseudoLRUHitRatioTracksLRU() {
+        for (int numberOfSets = 1; numberOfSets < 32; numberOfSets += 5) {
+            for (int entriesPerSet = 2; entriesPerSet <= 64; entriesPerSet *= 2) {
+                final double lru = hitRatio(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new);
+                final double plru = hitRatio(numberOfSets, entriesPerSet, PseudoLRUInvalidator::new);
+
+                assertTrue(numberOfSets + " x " + entriesPerSet + ": LRU " + lru + ", PLRU " + plru,
+                        plru >= lru - 0.01);
+            }
+        }
+    }
 }
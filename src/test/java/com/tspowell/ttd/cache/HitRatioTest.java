@@ -0,0 +1,288 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.invalidation.ARCInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedMRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.TinyLFUInvalidator;
+import com.tspowell.ttd.cache.invalidation.WindowTinyLFUInvalidator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare the hit ratios of invalidation policies on synthetic traces.
+ */
+public class HitRatioTest {
+    private static final int NUMBER_OF_SETS = 64;
+    private static final int ENTRIES_PER_SET = 8;
+
+    /**
+     * Keys drawn from a Zipf distribution: key k is requested with probability proportional to 1 / (k+1)^skew.
+     */
+    static int[] zipf(final int keys, final double skew, final int length, final long seed) {
+        final double[] cumulative = new double[keys];
+        double total = 0;
+
+        for (int k = 0; k < keys; ++k) {
+            total += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = total;
+        }
+
+        final Random random = new Random(seed);
+        final int[] trace = new int[length];
+
+        for (int i = 0; i < length; ++i) {
+            final int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            trace[i] = index >= 0 ? index : -index - 1;
+        }
+
+        return trace;
+    }
+
+    /**
+     * A small hot set of keys, interleaved with a scan of keys that are never requested again.
+     */
+    static int[] scan(final int hotKeys, final int length, final long seed) {
+        final Random random = new Random(seed);
+        final int[] trace = new int[length];
+        int next = hotKeys;
+
+        for (int i = 0; i < length; ++i) {
+            trace[i] = random.nextBoolean() ? random.nextInt(hotKeys) : next++;
+        }
+
+        return trace;
+    }
+
+    /**
+     * A working set that drifts: keys a short way behind a moving pointer. Recency predicts reuse, frequency
+     * doesn't.
+     */
+    static int[] drift(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final int[] trace = new int[length];
+
+        for (int i = 0; i < length; ++i) {
+            trace[i] = i / 4 - (int) Math.abs(random.nextGaussian() * 100);
+        }
+
+        return trace;
+    }
+
+    /**
+     * Zipf-distributed keys, with one in four stretches of the trace replaced by a burst of keys that are never
+     * requested again.
+     */
+    static int[] scanBursts(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final int[] trace = zipf(2000, 0.9, length, seed);
+        int next = Integer.MAX_VALUE / 2;
+
+        for (int start = 0; start < length; start += 2000) {
+            if (random.nextInt(4) == 0) {
+                for (int i = start; i < Math.min(length, start + 1000); ++i) {
+                    trace[i] = next++;
+                }
+            }
+        }
+
+        return trace;
+    }
+
+    /**
+     * Replay a trace through a cache, putting every key that misses.
+     */
+    static double hitRatio(final IndexedCacheInvalidator.Factory<Integer, Integer> invalidator, final int[] trace) {
+        final SetAssociativeCache<Integer, Integer> cache =
+                new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET, invalidator);
+        int hits = 0;
+
+        for (final int key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+
+        return (double) hits / trace.length;
+    }
+
+    @Test
+    public void testTinyLFUOnZipf() {
+        final int[] trace = zipf(10000, 0.9, 200000, 1);
+
+        final double lru = hitRatio(IndexedLRUInvalidator::new, trace);
+        final double tinyLfu = hitRatio(TinyLFUInvalidator.factory(IndexedLRUInvalidator::new), trace);
+
+        assertTrue("LRU " + lru + ", TinyLFU " + tinyLfu, tinyLfu > lru + 0.03);
+    }
+
+    @Test
+    public void testTinyLFUOnScan() {
+        final int[] trace = scan(400, 200000, 2);
+
+        final double lru = hitRatio(CacheInvalidatorAdapter.factory(LRUInvalidator::new), trace);
+        final double tinyLfu = hitRatio(
+                TinyLFUInvalidator.factory(CacheInvalidatorAdapter.factory(LRUInvalidator::new)), trace);
+
+        assertTrue("LRU " + lru + ", TinyLFU " + tinyLfu, tinyLfu > lru + 0.1);
+    }
+
+    @Test
+    public void testWindowTinyLFU() {
+        final int[] zipf = zipf(10000, 0.9, 200000, 1);
+        assertTrue(hitRatio(WindowTinyLFUInvalidator::new, zipf) > hitRatio(IndexedLRUInvalidator::new, zipf) + 0.05);
+
+        final int[] scan = scan(400, 200000, 2);
+        assertTrue(hitRatio(WindowTinyLFUInvalidator::new, scan) > hitRatio(IndexedLRUInvalidator::new, scan) + 0.1);
+    }
+
+    /**
+     * Asks the policy for every victim twice, as a caller that reconsiders its victim would; the second time
+     * through a filter that accepts every way.
+     */
+    private static IndexedCacheInvalidator.Factory<Integer, Integer> askingTwice(
+            final IndexedCacheInvalidator.Factory<Integer, Integer> factory) {
+        return (numberOfSets, entriesPerSet, slots) -> {
+            final IndexedCacheInvalidator<Integer, Integer> policy = factory.create(numberOfSets, entriesPerSet, slots);
+
+            return new IndexedCacheInvalidator<Integer, Integer>() {
+                @Override
+                public void onHit(final int set, final int way) {
+                    policy.onHit(set, way);
+                }
+
+                @Override
+                public void onUpdate(final int set, final int way) {
+                    policy.onUpdate(set, way);
+                }
+
+                @Override
+                public void onInsert(final int set, final int way) {
+                    policy.onInsert(set, way);
+                }
+
+                @Override
+                public void onRemove(final int set, final int way) {
+                    policy.onRemove(set, way);
+                }
+
+                @Override
+                public int selectVictim(final int set) {
+                    policy.selectVictim(set);
+                    return policy.selectVictim(set);
+                }
+
+                @Override
+                public int selectVictim(final int set, final int candidateHash) {
+                    policy.selectVictim(set, candidateHash);
+                    return policy.selectVictim(set, candidateHash, way -> true);
+                }
+
+                @Override
+                public boolean admit(final int set, final int victimWay, final int candidateHash) {
+                    return policy.admit(set, victimWay, candidateHash);
+                }
+
+                @Override
+                public void onEvict(final int set, final int way) {
+                    policy.onEvict(set, way);
+                }
+
+                @Override
+                public boolean reset(final int set) {
+                    return policy.reset(set);
+                }
+            };
+        };
+    }
+
+    @Test
+    public void testSelectVictimIsAQuery() {
+        final int[] zipf = zipf(10000, 0.9, 200000, 1);
+        final List<IndexedCacheInvalidator.Factory<Integer, Integer>> policies = Arrays.asList(
+                IndexedLRUInvalidator::new,
+                IndexedMRUInvalidator::new,
+                PseudoLRUInvalidator::new,
+                CacheInvalidatorAdapter.factory(LRUInvalidator::new),
+                TinyLFUInvalidator.factory(IndexedLRUInvalidator::new),
+                WindowTinyLFUInvalidator::new,
+                ARCInvalidator::new);
+
+        for (final IndexedCacheInvalidator.Factory<Integer, Integer> policy : policies) {
+            assertEquals("policy " + policies.indexOf(policy),
+                    hitRatio(policy, zipf), hitRatio(askingTwice(policy), zipf), 0);
+        }
+    }
+
+    @Test
+    public void testWindowAdaptsToRecency() {
+        final int[] trace = drift(400000, 3);
+        final List<WindowTinyLFUInvalidator<Integer, Integer>> policies = new ArrayList<>();
+
+        final double windowTinyLfu = hitRatio((numberOfSets, entriesPerSet, slots) -> {
+            final WindowTinyLFUInvalidator<Integer, Integer> policy =
+                    new WindowTinyLFUInvalidator<>(numberOfSets, entriesPerSet, slots);
+            policies.add(policy);
+            return policy;
+        }, trace);
+        final double tinyLfu = hitRatio(TinyLFUInvalidator.factory(IndexedLRUInvalidator::new), trace);
+
+        // TinyLFU alone keeps out the new keys that recency favours; the window grows to let them in
+        assertTrue("TinyLFU " + tinyLfu + ", W-TinyLFU " + windowTinyLfu, windowTinyLfu > tinyLfu + 0.2);
+        assertTrue(policies.get(0).windowShare() > 0.3);
+    }
+
+    @Test
+    public void testARC() {
+        final int[] zipf = zipf(10000, 0.9, 200000, 1);
+        assertTrue(hitRatio(ARCInvalidator::new, zipf) > hitRatio(IndexedLRUInvalidator::new, zipf) + 0.05);
+
+        final int[] scan = scan(400, 200000, 2);
+        assertTrue(hitRatio(ARCInvalidator::new, scan) > hitRatio(IndexedLRUInvalidator::new, scan) + 0.2);
+
+        final int[] bursts = scanBursts(200000, 4);
+        assertTrue(hitRatio(ARCInvalidator::new, bursts) > hitRatio(IndexedLRUInvalidator::new, bursts) + 0.02);
+
+        // Nothing to gain over LRU when recency is all there is, but nothing lost either
+        final int[] drift = drift(400000, 3);
+        assertTrue(hitRatio(ARCInvalidator::new, drift) > hitRatio(IndexedLRUInvalidator::new, drift) - 0.01);
+    }
+
+    @Test
+    public void testARCAdaptsTarget() {
+        final List<ARCInvalidator<Integer, Integer>> policies = new ArrayList<>();
+        final IndexedCacheInvalidator.Factory<Integer, Integer> arc = (numberOfSets, entriesPerSet, slots) -> {
+            final ARCInvalidator<Integer, Integer> policy = new ARCInvalidator<>(numberOfSets, entriesPerSet, slots);
+            policies.add(policy);
+            return policy;
+        };
+
+        hitRatio(arc, scan(400, 200000, 2));
+        hitRatio(arc, drift(400000, 3));
+
+        // Scans push T1 towards the frequent keys of T2; a drifting working set pulls it back up
+        assertTrue(meanTarget(policies.get(0)) < meanTarget(policies.get(1)));
+    }
+
+    private static double meanTarget(final ARCInvalidator<Integer, Integer> policy) {
+        double total = 0;
+        for (int set = 0; set < NUMBER_OF_SETS; ++set) {
+            total += policy.target(set);
+        }
+
+        return total / NUMBER_OF_SETS;
+    }
+}
@@ -0,0 +1,228 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.MRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.lru.IndexedLRUList;
+import com.tspowell.ttd.cache.invalidation.lru.LinkedEntry;
+import com.tspowell.ttd.cache.invalidation.lru.LinkedLRUList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The way-indexed recency list must order ways exactly like the reference LinkedLRUList.
+ */
+public class IndexedLRUListTest {
+
+    private static class ReferenceList extends LinkedLRUList<Integer, Integer> {
+        final List<LinkedEntry<Integer, Integer>> nodes = new ArrayList<>();
+
+        ReferenceList(final int ways) {
+            for (int way = 0; way < ways; ++way) {
+                nodes.add(new LinkedEntry<>(null));
+            }
+        }
+
+        boolean linked(final LinkedEntry<Integer, Integer> node) {
+            for (LinkedEntry<Integer, Integer> e = head(); e != null; e = e.next()) {
+                if (e == node) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        void use(final int way) {
+            markRecentlyUsed(nodes.get(way));
+        }
+
+        void remove(final int way) {
+            final LinkedEntry<Integer, Integer> node = nodes.get(way);
+
+            // LinkedLRUList expects removed entries to be linked
+            if (linked(node)) {
+                removeEntry(node);
+                node.setNext(null);
+                node.setPrevious(null);
+            }
+        }
+
+        List<Integer> order() {
+            final List<Integer> order = new ArrayList<>();
+
+            for (LinkedEntry<Integer, Integer> e = head(); e != null; e = e.next()) {
+                order.add(nodes.indexOf(e));
+            }
+
+            return order;
+        }
+    }
+
+    private static class IndexedList extends IndexedLRUList {
+        IndexedList(final int sets, final int ways) {
+            super(sets, ways);
+        }
+
+        void use(final int set, final int way) {
+            markRecentlyUsed(set, way);
+        }
+
+        void remove(final int set, final int way) {
+            removeEntry(set, way);
+        }
+
+        List<Integer> order(final int set) {
+            final List<Integer> order = new ArrayList<>();
+
+            for (int way = head(set); way != NONE; way = next(set, way)) {
+                order.add(way);
+            }
+
+            return order;
+        }
+    }
+
+    /**
+     * An entry that doesn't know its way, recording the order it is unset in.
+     */
+    private static class KeyedEntry implements UnsettableEntry<Integer, Integer> {
+        private final int key;
+        private final List<Integer> unset;
+
+        KeyedEntry(final int key, final List<Integer> unset) {
+            this.key = key;
+            this.unset = unset;
+        }
+
+        @Override
+        public void unset() {
+            this.unset.add(this.key);
+        }
+
+        @Override
+        public Integer getKey() {
+            return this.key;
+        }
+
+        @Override
+        public Integer getValue() {
+            return this.key;
+        }
+
+        @Override
+        public <T> T unwrap(final Class<T> clazz) {
+            return clazz.cast(this);
+        }
+    }
+
+    /**
+     * An entry whose way is its key.
+     */
+    private static final class WayEntry extends KeyedEntry implements IndexedEntry<Integer, Integer> {
+        WayEntry(final int key, final List<Integer> unset) {
+            super(key, unset);
+        }
+
+        @Override
+        public int way() {
+            return getKey();
+        }
+    }
+
+    @Test
+    public void testInvalidatorsLinkEntriesWithoutAWayByKey() {
+        final List<Supplier<CacheInvalidator<Integer, Integer>>> policies =
+                Arrays.asList(LRUInvalidator::new, MRUInvalidator::new);
+
+        for (final Supplier<CacheInvalidator<Integer, Integer>> policy : policies) {
+            final Random random = new Random(11);
+            final List<Integer> referenceUnset = new ArrayList<>();
+            final List<Integer> keyedUnset = new ArrayList<>();
+            final List<Integer> mixedUnset = new ArrayList<>();
+            final CacheInvalidator<Integer, Integer> reference = policy.get();
+            final CacheInvalidator<Integer, Integer> keyed = policy.get();
+            final CacheInvalidator<Integer, Integer> mixed = policy.get();
+
+            for (int i = 0; i < 5000; ++i) {
+                final int key = random.nextInt(8);
+                // The mixed invalidator sees entries with a way first, then either kind
+                final UnsettableEntry<Integer, Integer> mixedEntry = i < 100 || random.nextBoolean()
+                        ? new WayEntry(key, mixedUnset)
+                        : new KeyedEntry(key, mixedUnset);
+
+                switch (random.nextInt(8)) {
+                    case 0:
+                        reference.remove(new WayEntry(key, referenceUnset));
+                        keyed.remove(new KeyedEntry(key, keyedUnset));
+                        mixed.remove(mixedEntry);
+                        break;
+                    case 1:
+                        final boolean invalidated = reference.invalidate();
+                        assertEquals(invalidated, keyed.invalidate());
+                        assertEquals(invalidated, mixed.invalidate());
+                        break;
+                    default:
+                        reference.touch(new WayEntry(key, referenceUnset));
+                        keyed.touch(new KeyedEntry(key, keyedUnset));
+                        mixed.touch(mixedEntry);
+                }
+
+                final UnsettableEntry<Integer, Integer> next = reference.peek();
+                final Integer nextKey = next == null ? null : next.getKey();
+                assertEquals(nextKey, keyed.peek() == null ? null : keyed.peek().getKey());
+                assertEquals(nextKey, mixed.peek() == null ? null : mixed.peek().getKey());
+            }
+
+            while (reference.invalidate()) {
+                keyed.invalidate();
+                mixed.invalidate();
+            }
+
+            assertEquals(referenceUnset, keyedUnset);
+            assertEquals(referenceUnset, mixedUnset);
+        }
+    }
+
+    @Test
+    public void testMatchesLinkedLRUList() {
+        final int sets = 4;
+        final int ways = 16;
+        final Random random = new Random(7);
+        final IndexedList indexed = new IndexedList(sets, ways);
+        final List<ReferenceList> references = new ArrayList<>();
+
+        for (int set = 0; set < sets; ++set) {
+            references.add(new ReferenceList(ways));
+        }
+
+        for (int i = 0; i < 10000; ++i) {
+            final int set = random.nextInt(sets);
+            final int way = random.nextInt(ways);
+
+            if (random.nextInt(4) == 0) {
+                indexed.remove(set, way);
+                references.get(set).remove(way);
+            } else {
+                indexed.use(set, way);
+                references.get(set).use(way);
+            }
+
+            assertEquals(references.get(set).order(), indexed.order(set));
+        }
+
+        for (int set = 0; set < sets; ++set) {
+            final List<Integer> order = references.get(set).order();
+
+            assertEquals(order.isEmpty() ? IndexedLRUList.NONE : (int) order.get(0), indexed.head(set));
+            assertEquals(order.isEmpty() ? IndexedLRUList.NONE : (int) order.get(order.size() - 1), indexed.tail(set));
+        }
+    }
+}
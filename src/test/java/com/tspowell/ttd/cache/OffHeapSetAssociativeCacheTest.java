@@ -0,0 +1,158 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.associative.OffHeapSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.associative.ValueSerializer;
+import com.tspowell.ttd.cache.associative.ValueSerializers;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test the off-heap value store.
+ */
+public class OffHeapSetAssociativeCacheTest {
+
+    @Test
+    public void testRoundTrip() {
+        final OffHeapSetAssociativeCache<String, String> cache =
+                new OffHeapSetAssociativeCache<>(4, 4, 16, ValueSerializers.UTF8_STRING);
+
+        cache.put("Travis", "Powell");
+        cache.put("empty", "");
+
+        assertEquals("Powell", cache.get("Travis"));
+        assertEquals("", cache.get("empty"));
+        assertNull(cache.get("Non-Existant Key"));
+        assertEquals(2, cache.size());
+        assertEquals(4 * 4 * (4 + 16), cache.offHeapBytes());
+
+        cache.put("Travis", "P");
+        assertEquals("P", cache.get("Travis"));
+
+        assertTrue(cache.remove("Travis"));
+        assertFalse(cache.remove("Travis"));
+        assertNull(cache.get("Travis"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testViewReadsSlotInPlace() {
+        final OffHeapSetAssociativeCache<Integer, byte[]> cache =
+                new OffHeapSetAssociativeCache<>(2, 2, 8, ValueSerializers.BYTE_ARRAY);
+        cache.put(1, new byte[] {1, 2, 3});
+
+        final ByteBuffer view = cache.getView(1);
+
+        assertTrue(view.isDirect());
+        assertTrue(view.isReadOnly());
+        assertEquals(3, view.remaining());
+        assertEquals(2, view.get(1));
+
+        // The view is backed by the slot, so it sees an in-place update of the same length
+        cache.put(1, new byte[] {4, 5, 6});
+        assertEquals(5, view.get(1));
+    }
+
+    @Test
+    public void testOversizedValueIsRejected() {
+        final OffHeapSetAssociativeCache<String, String> cache =
+                new OffHeapSetAssociativeCache<>(1, 2, 4, ValueSerializers.UTF8_STRING);
+        cache.put("key", "abcd");
+
+        try {
+            cache.put("key", "abcde");
+            fail("A value larger than a slot must be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals("abcd", cache.get("key"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testFailedSerializationLeavesCacheUnchanged() {
+        final ValueSerializer<String> failOnBang = new ValueSerializer<String>() {
+            @Override
+            public int serializedSize(final String value) {
+                return ValueSerializers.UTF8_STRING.serializedSize(value);
+            }
+
+            @Override
+            public void write(final String value, final ByteBuffer target) {
+                if (value.startsWith("!")) {
+                    target.put((byte) '?');
+                    throw new IllegalStateException("Cannot serialize " + value);
+                }
+
+                ValueSerializers.UTF8_STRING.write(value, target);
+            }
+
+            @Override
+            public String read(final ByteBuffer source) {
+                return ValueSerializers.UTF8_STRING.read(source);
+            }
+        };
+        final OffHeapSetAssociativeCache<Integer, String> cache =
+                new OffHeapSetAssociativeCache<>(1, 2, 8, failOnBang);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        for (final int key : new int[] {1, 3}) {
+            try {
+                cache.put(key, "!bang");
+                fail("The serializer's exception must reach the caller");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+        // Neither the update nor the insert touched the set
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(1));
+        assertEquals("two", cache.get(2));
+        assertFalse(cache.containsKey(3));
+
+        // The invalidator still tracks both entries: once 1 is read again, 2 is the one evicted
+        cache.get(1);
+        cache.put(3, "three");
+        assertEquals("three", cache.get(3));
+        assertEquals("one", cache.get(1));
+        assertFalse(cache.containsKey(2));
+    }
+
+    @Test
+    public void testMatchesOnHeapCache() {
+        final OffHeapSetAssociativeCache<Integer, String> cache =
+                new OffHeapSetAssociativeCache<>(8, 4, 8, ValueSerializers.UTF8_STRING);
+        final SetAssociativeCache<Integer, String> reference = new SetAssociativeCache<>(8, 4);
+        final Random random = new Random(19);
+
+        for (int i = 0; i < 20000; ++i) {
+            final int key = random.nextInt(100);
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.remove(key) != null, cache.remove(key));
+                    break;
+                case 1:
+                    cache.put(key, "v" + i);
+                    reference.put(key, "v" + i);
+                    break;
+                default:
+                    assertEquals(reference.get(key), cache.get(key));
+            }
+
+            assertEquals(reference.size(), cache.size());
+        }
+
+        cache.clear();
+
+        assertTrue(cache.isEmpty());
+        assertNull(cache.getView(0));
+    }
+}
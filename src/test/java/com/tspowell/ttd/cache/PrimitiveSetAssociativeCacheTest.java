@@ -0,0 +1,113 @@
+package com.tspowell.ttd.cache;
+
+import com.tspowell.ttd.cache.associative.IntObjectSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.LongLongSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.LongObjectSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The primitive caches must behave exactly like a SetAssociativeCache of boxed keys with the same geometry
+ * and invalidator.
+ */
+public class PrimitiveSetAssociativeCacheTest {
+
+    @Test
+    public void testLongLongMatchesBoxedCache() {
+        final LongLongSetAssociativeCache cache = new LongLongSetAssociativeCache(16, 4);
+        final SetAssociativeCache<Long, Long> reference = new SetAssociativeCache<>(16, 4);
+        final Random random = new Random(11);
+
+        for (int i = 0; i < 20000; ++i) {
+            // Negative keys and keys above 2^32 exercise the high half of the hash
+            final long key = (random.nextInt(200) - 100) * 0x100000001L;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.remove(key) != null, cache.remove(key));
+                    break;
+                case 1:
+                    cache.put(key, i);
+                    reference.put(key, (long) i);
+                    break;
+                default:
+                    final Long expected = reference.get(key);
+                    assertEquals(expected == null ? -1L : expected, cache.get(key, -1L));
+            }
+
+            assertEquals(reference.size(), cache.size());
+        }
+
+        for (long key = -100; key < 100; ++key) {
+            assertEquals(reference.containsKey(key * 0x100000001L), cache.containsKey(key * 0x100000001L));
+        }
+
+        cache.clear();
+
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.containsKey(0L));
+    }
+
+    @Test
+    public void testLongObjectMatchesBoxedCache() {
+        final LongObjectSetAssociativeCache<String> cache =
+                new LongObjectSetAssociativeCache<>(8, 3, PseudoLRUInvalidator::new);
+        final SetAssociativeCache<Long, String> reference =
+                new SetAssociativeCache<>(8, 3, PseudoLRUInvalidator::new);
+        final Random random = new Random(13);
+
+        for (int i = 0; i < 20000; ++i) {
+            final long key = random.nextInt(100) * 0x10000000L;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.remove(key), cache.remove(key));
+                    break;
+                case 1:
+                    final boolean present = reference.containsKey(key);
+                    final String previous = cache.put(key, "v" + i);
+                    final String referencePrevious = reference.put(key, "v" + i);
+
+                    assertEquals(present ? referencePrevious : null, previous);
+                    break;
+                default:
+                    assertEquals(reference.get(key), cache.get(key));
+            }
+
+            assertEquals(reference.size(), cache.size());
+        }
+    }
+
+    @Test
+    public void testIntObjectWithPerSetInvalidator() {
+        final IntObjectSetAssociativeCache<Integer> cache =
+                new IntObjectSetAssociativeCache<>(4, 4, LRUInvalidator::new);
+        final SetAssociativeCache<Integer, Integer> reference =
+                new SetAssociativeCache<>(4, 4, LRUInvalidator::new);
+        final Random random = new Random(17);
+
+        for (int i = 0; i < 20000; ++i) {
+            final int key = random.nextInt(64) - 32;
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(reference.remove(key), cache.remove(key));
+                    break;
+                case 1:
+                    cache.put(key, i);
+                    reference.put(key, i);
+                    break;
+                default:
+                    assertEquals(reference.get(key), cache.get(key));
+            }
+
+            assertEquals(reference.size(), cache.size());
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.tspowell.ttd.cache;
 
 import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetIndexers;
 import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedMRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.InvalidationException;
 import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
 import com.tspowell.ttd.cache.invalidation.MRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.SampledInvalidator;
 import com.tspowell.ttd.cache.invalidation.SmallestValueInvalidator;
+import com.tspowell.ttd.cache.invalidation.TinyLFUInvalidator;
 import org.junit.Test;
 
 import javax.cache.Cache;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -369,6 +378,47 @@ public class SetAssociativeCacheTest {
         assertEquals(Integer.valueOf(2), cache.get(2));
     }
 
+    @Test
+    public void testAdaptedInvalidatorMustPeek() {
+        // Unsets its victim, but can't tell it in advance
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(1, 1, () ->
+            new CacheInvalidator<Integer, Integer>() {
+                private final Deque<UnsettableEntry<Integer, Integer>> entries = new ArrayDeque<>();
+
+                @Override
+                public void touch(UnsettableEntry<Integer, Integer> entry) {
+                    this.entries.remove(entry);
+                    this.entries.addLast(entry);
+                }
+
+                @Override
+                public void remove(UnsettableEntry<Integer, Integer> entry) {
+                    this.entries.remove(entry);
+                }
+
+                @Override
+                public boolean invalidate() {
+                    final UnsettableEntry<Integer, Integer> entry = this.entries.pollFirst();
+                    if (entry == null) {
+                        return false;
+                    }
+
+                    entry.unset();
+                    return true;
+                }
+            });
+
+        cache.put(1, 1);
+        try {
+            cache.put(2, 2);
+            fail("The adapter evicted without peeking");
+        } catch (InvalidationException e) {
+            assertTrue(e.getMessage().contains("peek()"));
+        }
+
+        assertEquals(Integer.valueOf(1), cache.get(1));
+    }
+
     @Test
     public void testDefaultInvalidationEmptyBucket() {
         final CacheInvalidator
@@ -393,4 +443,442 @@ public class SetAssociativeCacheTest {
         assertEquals(3, cache.size());
         assertEquals(new HashSet<>(Arrays.asList("two", "three", "four")), cache.keySet());
     }
+
+    private static Set<Integer> randomWorkload(final SetAssociativeCache<Integer, Integer> cache) {
+        final Random random = new Random(11);
+
+        for (int i = 0; i < 20000; ++i) {
+            final int key = random.nextInt(200);
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    cache.remove(key);
+                    break;
+                case 1:
+                    cache.get(key);
+                    break;
+                default:
+                    cache.put(key, i);
+            }
+        }
+
+        return cache.keySet();
+    }
+
+    @Test
+    public void testIndexedInvalidatorsMatchPerSetInvalidators() {
+        assertEquals(
+                randomWorkload(new SetAssociativeCache<>(8, 6, LRUInvalidator::new)),
+                randomWorkload(new SetAssociativeCache<>(8, 6, IndexedLRUInvalidator::new)));
+
+        assertEquals(
+                randomWorkload(new SetAssociativeCache<>(8, 6, MRUInvalidator::new)),
+                randomWorkload(new SetAssociativeCache<>(8, 6, IndexedMRUInvalidator::new)));
+    }
+
+    @Test
+    public void testAdaptedInvalidatorsMatchIndexedInvalidatorsUnderAdmission() {
+        // TinyLFU rejects many of the new keys; a rejected victim must keep its place in either order
+        assertEquals(
+                randomWorkload(new SetAssociativeCache<>(8, 6,
+                        TinyLFUInvalidator.factory(CacheInvalidatorAdapter.factory(LRUInvalidator::new)))),
+                randomWorkload(new SetAssociativeCache<>(8, 6,
+                        TinyLFUInvalidator.factory(IndexedLRUInvalidator::new))));
+
+        assertEquals(
+                randomWorkload(new SetAssociativeCache<>(8, 6,
+                        TinyLFUInvalidator.factory(CacheInvalidatorAdapter.factory(MRUInvalidator::new)))),
+                randomWorkload(new SetAssociativeCache<>(8, 6,
+                        TinyLFUInvalidator.factory(IndexedMRUInvalidator::new))));
+    }
+
+    private static class FixedHash {
+        final int hash;
+
+        FixedHash(final int hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    public void testMinimumHashCode() {
+        for (final SetIndexers indexer : SetIndexers.values()) {
+            final SetAssociativeCache<FixedHash, Integer> cache =
+                    new SetAssociativeCache<>(16, 2, IndexedLRUInvalidator::new, indexer);
+            final FixedHash key = new FixedHash(Integer.MIN_VALUE);
+
+            cache.put(key, 1);
+            assertEquals(Integer.valueOf(1), cache.get(key));
+        }
+
+        final SetAssociativeCache<FixedHash, Integer> cache = new SetAssociativeCache<>(7, 2);
+        final FixedHash key = new FixedHash(Integer.MIN_VALUE);
+
+        cache.put(key, 1);
+        assertEquals(Integer.valueOf(1), cache.get(key));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaskRequiresPowerOfTwoSets() {
+        new SetAssociativeCache<>(12, 2, IndexedLRUInvalidator::new, SetIndexers.MASK);
+    }
+
+    @Test
+    public void testStridedKeysAreSpreadOverSets() {
+        final int numberOfSets = 64;
+        final int entriesPerSet = 4;
+
+        for (final SetIndexers indexer : SetIndexers.values()) {
+            final SetAssociativeCache<Integer, Integer> cache =
+                    new SetAssociativeCache<>(numberOfSets, entriesPerSet, IndexedLRUInvalidator::new, indexer);
+
+            for (int i = 0; i < numberOfSets * entriesPerSet; ++i) {
+                cache.put(i * numberOfSets, i);
+            }
+
+            if (indexer == SetIndexers.MODULO || indexer == SetIndexers.MASK) {
+                // Every key conflicts in set 0
+                assertEquals(entriesPerSet, cache.size());
+            } else {
+                assertTrue(indexer + " kept " + cache.size(), cache.size() > numberOfSets * entriesPerSet / 2);
+            }
+        }
+    }
+
+    @Test
+    public void testMoreThanSixtyFourWays() {
+        final int entriesPerSet = 130;
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(3, entriesPerSet);
+
+        for (int i = 0; i < 1000; ++i) {
+            cache.put(i, i);
+        }
+
+        assertEquals(3 * entriesPerSet, cache.size());
+
+        // The most recent keys survive, whatever set they are in
+        for (int i = 999; i > 999 - entriesPerSet; --i) {
+            assertTrue(cache.containsKey(i));
+        }
+
+        final List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 3) {
+            if (cache.remove(i) != null) {
+                removed.add(i);
+            }
+        }
+
+        assertEquals(3 * entriesPerSet - removed.size(), cache.size());
+        assertEquals(cache.size(), cache.keySet().size());
+        assertFalse(cache.containsValue(999));
+        assertTrue(cache.containsValue(998));
+
+        // Freed ways are reused before anything is evicted
+        for (final Integer key : removed) {
+            cache.put(key, key);
+        }
+
+        assertEquals(3 * entriesPerSet, cache.size());
+        assertTrue(cache.containsKey(998));
+    }
+
+    @Test
+    public void testCursorAndForEachMatchIterator() {
+        final SetAssociativeCache<Integer, String> cache = new SetAssociativeCache<>(5, 70);
+        for (int i = 0; i < 500; i += 2) {
+            cache.put(i, "v" + i);
+        }
+
+        final List<String> iterated = new ArrayList<>();
+        for (final Cache.Entry<Integer, String> entry : cache) {
+            iterated.add(entry.getKey() + "=" + entry.getValue());
+        }
+
+        final List<String> cursored = new ArrayList<>();
+        for (final CacheCursor<Integer, String> cursor = cache.cursor(); cursor.advance(); ) {
+            cursored.add(cursor.key() + "=" + cursor.value());
+        }
+
+        final List<String> visited = new ArrayList<>();
+        cache.forEach((key, value) -> visited.add(key + "=" + value));
+
+        assertEquals(250, iterated.size());
+        assertEquals(iterated, cursored);
+        assertEquals(iterated, visited);
+
+        cache.clear();
+
+        assertFalse(cache.cursor().advance());
+    }
+
+    @Test
+    public void testViewsAreLive() {
+        final SetAssociativeCache<String, Integer> cache = new SetAssociativeCache<>(4, 4);
+        final Set<String> keys = cache.keySet();
+        final Collection<Integer> values = cache.values();
+        final Set<Map.Entry<String, Integer>> entries = cache.entrySet();
+
+        cache.put("one", 1);
+        cache.put("two", 2);
+        cache.put("three", 3);
+
+        assertSame(keys, cache.keySet());
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains("two"));
+        assertTrue(values.contains(3));
+        assertTrue(entries.contains(new AbstractMap.SimpleEntry<>("one", 1)));
+        assertFalse(entries.contains(new AbstractMap.SimpleEntry<>("one", 2)));
+        assertEquals(new HashSet<>(Arrays.asList("one", "two", "three")), keys);
+
+        // Removing through a view removes from the cache
+        assertTrue(keys.remove("one"));
+        assertFalse(cache.containsKey("one"));
+        assertTrue(entries.remove(new AbstractMap.SimpleEntry<>("two", 2)));
+        assertEquals(1, cache.size());
+
+        cache.put("four", 4);
+        for (final Iterator<Integer> itr = values.iterator(); itr.hasNext(); ) {
+            if (itr.next() == 4) {
+                itr.remove();
+            }
+        }
+
+        assertEquals(Collections.singleton("three"), keys);
+
+        // Entries write through
+        entries.iterator().next().setValue(33);
+        assertEquals(Integer.valueOf(33), cache.get("three"));
+
+        keys.clear();
+        assertTrue(cache.isEmpty());
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void testClearResetsEvictionState() {
+        final List<String> removed = new ArrayList<>();
+        final SetAssociativeCache<String, Integer> cache = new SetAssociativeCache<>(1, 3,
+                (sets, ways, slots) -> new IndexedLRUInvalidator<String, Integer>(sets, ways, slots) {
+                    // Fall back to the default, so the cache reports the cleared ways one by one
+                    @Override
+                    public boolean reset(final int set) {
+                        return false;
+                    }
+
+                    @Override
+                    public void onRemove(final int set, final int way) {
+                        removed.add(slots.key(set, way));
+                        super.onRemove(set, way);
+                    }
+                });
+
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.clear();
+
+        assertTrue(cache.isEmpty());
+        assertFalse(cache.iterator().hasNext());
+        assertFalse(cache.containsValue(1));
+        assertTrue(removed.isEmpty());
+
+        // The set is reclaimed on first use, and the cleared keys no longer steer eviction
+        assertNull(cache.get("a"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), new HashSet<>(removed));
+
+        cache.put("d", 4);
+        cache.put("e", 5);
+        cache.put("f", 6);
+        cache.put("g", 7);
+
+        assertEquals(new HashSet<>(Arrays.asList("e", "f", "g")), cache.keySet());
+    }
+
+    @Test
+    public void testRepeatedClear() {
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(16, 4, PseudoLRUInvalidator::new);
+
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 40; ++i) {
+                cache.put(round * 1000 + i, i);
+            }
+
+            assertEquals(40, cache.size());
+            assertEquals(cache.size(), cache.keySet().size());
+
+            cache.clear();
+            assertEquals(0, cache.entrySet().size());
+        }
+    }
+
+    @Test
+    public void testSampledHits() {
+        // Never sampled: hits don't count, so LRU degrades to insertion order
+        final SetAssociativeCache<String, Integer> unsampled = new SetAssociativeCache<>(1, 2,
+                SampledInvalidator.factory(0.0, CacheInvalidatorAdapter.factory(LRUInvalidator::new)));
+        unsampled.put("a", 1);
+        unsampled.put("b", 2);
+        unsampled.get("a");
+        unsampled.put("c", 3);
+
+        assertFalse(unsampled.containsKey("a"));
+
+        // Updates are always passed on
+        unsampled.put("b", 4);
+        unsampled.put("d", 5);
+
+        assertEquals(new HashSet<>(Arrays.asList("b", "d")), unsampled.keySet());
+
+        // Always sampled: exactly the wrapped policy
+        assertEquals(
+                randomWorkload(new SetAssociativeCache<>(8, 6, IndexedMRUInvalidator::new)),
+                randomWorkload(new SetAssociativeCache<>(8, 6,
+                        SampledInvalidator.factory(1.0, IndexedMRUInvalidator::new))));
+    }
+
+    @Test
+    public void testBatchedGetAllAndPutAll() {
+        // 70 ways span two occupancy words
+        final SetAssociativeCache<Integer, Integer> batched = new SetAssociativeCache<>(5, 70);
+        final SetAssociativeCache<Integer, Integer> reference = new SetAssociativeCache<>(5, 70);
+        final Random random = new Random(5);
+
+        for (int round = 0; round < 20; ++round) {
+            final Map<Integer, Integer> entries = new LinkedHashMap<>();
+            for (int i = 0; i < 100; ++i) {
+                entries.put(random.nextInt(1000), round);
+            }
+
+            batched.putAll(entries);
+            entries.forEach(reference::put);
+
+            final Integer[] keys = new Integer[50];
+            final Integer[] values = new Integer[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                keys[i] = random.nextInt(1000);
+            }
+
+            final int hits = batched.getAll(keys, values);
+            int expectedHits = 0;
+            for (int i = 0; i < keys.length; ++i) {
+                final Integer expected = reference.get(keys[i]);
+                assertEquals(expected, values[i]);
+                expectedHits += expected == null ? 0 : 1;
+            }
+
+            assertEquals(expectedHits, hits);
+            assertEquals(reference.keySet(), batched.keySet());
+        }
+
+        final Map<Integer, Integer> found = batched.getAll(Arrays.asList(-1, 3, 1, 2));
+        found.forEach((key, value) -> assertEquals(reference.get(key), value));
+        assertFalse(found.containsKey(-1));
+    }
+
+    @Test
+    public void testSpliteratorSplitsOnSets() {
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(4096, 4);
+        for (int i = 0; i < 10000; ++i) {
+            cache.put(i, i);
+        }
+
+        final Spliterator<Cache.Entry<Integer, Integer>> whole = cache.spliterator();
+        assertTrue(whole.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        assertEquals(cache.size(), whole.estimateSize());
+
+        final Spliterator<Cache.Entry<Integer, Integer>> half = whole.trySplit();
+        final long[] counted = new long[2];
+        final long halfSize = half.estimateSize();
+        final long restSize = whole.estimateSize();
+        half.forEachRemaining(entry -> counted[0]++);
+        whole.forEachRemaining(entry -> counted[1]++);
+
+        assertEquals(cache.size(), halfSize + restSize);
+        assertEquals(halfSize, counted[0]);
+        assertEquals(restSize, counted[1]);
+
+        final Map<Integer, Integer> streamed = cache.stream().parallel()
+                .collect(Collectors.toMap(Cache.Entry::getKey, Cache.Entry::getValue));
+        assertEquals(new HashMap<>(cache), streamed);
+    }
+
+    @Test
+    public void testParallelBulkOperations() {
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(4096, 4);
+        final SetAssociativeCache<Integer, Integer> reference = new SetAssociativeCache<>(4096, 4);
+        for (int i = 0; i < 10000; ++i) {
+            cache.put(i, i);
+            reference.put(i, i);
+        }
+
+        final LongAdder sum = new LongAdder();
+        cache.parallelForEach((key, value) -> sum.add(value));
+        assertEquals(reference.values().stream().mapToLong(Integer::longValue).sum(), sum.sum());
+
+        cache.parallelReplaceAll((key, value) -> value * 2);
+        assertTrue(cache.parallelRemoveIf((key, value) -> key % 3 == 0));
+        assertFalse(cache.parallelRemoveIf((key, value) -> key % 3 == 0));
+
+        final Map<Integer, Integer> expected = new HashMap<>();
+        reference.forEach((key, value) -> {
+            if (key % 3 != 0) {
+                expected.put(key, value * 2);
+            }
+        });
+
+        assertEquals(expected.size(), cache.size());
+        assertEquals(expected, new HashMap<>(cache));
+
+        // The invalidator was told about the removals, so the freed ways are reused
+        for (int i = 20000; i < 30000; ++i) {
+            cache.put(i, i);
+        }
+        assertEquals(cache.size(), cache.keySet().stream().count());
+
+        // replaceAll() stays sequential, on the calling thread, in iteration order
+        final Thread caller = Thread.currentThread();
+        final List<Integer> replaced = new ArrayList<>();
+        cache.replaceAll((key, value) -> {
+            assertSame(caller, Thread.currentThread());
+            replaced.add(key);
+            return value;
+        });
+        assertEquals(new ArrayList<>(cache.keySet()), replaced);
+
+        // So does removeIf()
+        final List<Integer> tested = new ArrayList<>();
+        final List<Integer> keys = new ArrayList<>(cache.keySet());
+        assertTrue(cache.removeIf((key, value) -> {
+            assertSame(caller, Thread.currentThread());
+            tested.add(key);
+            return key % 5 == 0;
+        }));
+        assertEquals(keys, tested);
+        assertFalse(cache.containsKey(20000));
+        assertTrue(cache.containsKey(20001));
+    }
+
+    @Test
+    public void testParallelRemoveIfKeepsSharedInvalidatorStateOnOneThread() {
+        final SetAssociativeCache<Integer, Integer> cache = new SetAssociativeCache<>(
+                4096, 4, TinyLFUInvalidator.factory(IndexedLRUInvalidator::new));
+        for (int i = 0; i < 10000; ++i) {
+            cache.put(i, i);
+        }
+
+        // The sets share TinyLFU's sketch, so the removals must not be reported from several threads
+        final Thread caller = Thread.currentThread();
+        assertTrue(cache.parallelRemoveIf((key, value) -> {
+            assertSame(caller, Thread.currentThread());
+            return key % 2 == 0;
+        }));
+        assertFalse(cache.keySet().stream().anyMatch(key -> key % 2 == 0));
+        assertEquals(cache.size(), cache.keySet().stream().count());
+    }
 }
@@ -0,0 +1,63 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up a batch of keys in a cache much larger than the CPU caches: one get() at a time, against
+ * getAll(), which overlaps the memory accesses of the batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int NUMBER_OF_SETS = 1 << 18;
+    private static final int ENTRIES_PER_SET = 8;
+    private static final int BATCH = 64;
+
+    private SetAssociativeCache<Integer, Integer> cache;
+    private Integer[][] batches;
+    private Integer[] values;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.cache = new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET);
+
+        final int universe = NUMBER_OF_SETS * ENTRIES_PER_SET;
+        for (int key = 0; key < universe; ++key) {
+            this.cache.put(key, key);
+        }
+
+        final Random random = new Random(17);
+        this.batches = new Integer[1024][BATCH];
+        for (final Integer[] batch : this.batches) {
+            for (int i = 0; i < BATCH; ++i) {
+                batch[i] = random.nextInt(universe);
+            }
+        }
+
+        this.values = new Integer[BATCH];
+    }
+
+    @Benchmark
+    public void get(final Blackhole blackhole) {
+        final Integer[] keys = this.batches[this.index++ & (this.batches.length - 1)];
+
+        for (final Integer key : keys) {
+            blackhole.consume(this.cache.get(key));
+        }
+    }
+
+    @Benchmark
+    public int getAll() {
+        return this.cache.getAll(this.batches[this.index++ & (this.batches.length - 1)], this.values);
+    }
+}
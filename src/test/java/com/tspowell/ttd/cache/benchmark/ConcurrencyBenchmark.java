@@ -0,0 +1,113 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.ConcurrentSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through throughput of a cache shared by all threads: a SetAssociativeCache behind one global lock,
+ * against the lock-striped ConcurrentSetAssociativeCache. Run main() to scale from 1 to 64 threads, or pass
+ * {@code -t} to the JMH runner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrencyBenchmark {
+    private static final int NUMBER_OF_SETS = 1 << 14;
+    private static final int ENTRIES_PER_SET = 8;
+    private static final int KEYS = 1 << 20;
+
+    @Param({"synchronized", "striped"})
+    public String cache;
+
+    private Map<Integer, Integer> map;
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private Integer[] keys;
+        private boolean[] writes;
+        private int index;
+
+        @Setup
+        public void setup() {
+            // Skewed towards low keys, so that most reads hit
+            final Random random = new Random(Thread.currentThread().getId());
+            this.keys = new Integer[1 << 16];
+            this.writes = new boolean[this.keys.length];
+
+            for (int i = 0; i < this.keys.length; ++i) {
+                this.keys[i] = (int) (KEYS * Math.pow(random.nextDouble(), 3));
+                this.writes[i] = random.nextInt(20) == 0;
+            }
+        }
+
+        Integer next() {
+            return this.keys[this.index++ & (this.keys.length - 1)];
+        }
+
+        /**
+         * @return whether the key last returned by next() should be written rather than read
+         */
+        boolean isWrite() {
+            return this.writes[(this.index - 1) & (this.keys.length - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.map = "striped".equals(this.cache)
+                ? new ConcurrentSetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET)
+                : Collections.synchronizedMap(new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET));
+    }
+
+    @Benchmark
+    public Integer readThrough(final Keys keys) {
+        final Integer key = keys.next();
+        final Integer value = this.map.get(key);
+
+        if (value == null) {
+            this.map.put(key, key);
+            return key;
+        }
+
+        return value;
+    }
+
+    /**
+     * 95% reads and 5% writes.
+     */
+    @Benchmark
+    public Integer readMostly(final Keys keys) {
+        final Integer key = keys.next();
+
+        if (keys.isWrite()) {
+            this.map.put(key, key);
+            return key;
+        }
+
+        return this.map.get(key);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            final Options options = new OptionsBuilder()
+                    .include(ConcurrencyBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
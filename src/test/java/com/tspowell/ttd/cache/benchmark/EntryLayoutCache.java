@@ -0,0 +1,174 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.IndexedEntry;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.InvalidationException;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The original object-per-slot layout of the set-associative cache, kept only as a benchmark baseline.
+ * Every slot is an Entry object, and every set is a Bucket holding its own Entry[].
+ *
+ * Only get() and put() are supported.
+ */
+public class EntryLayoutCache<K, V> extends AbstractMap<K, V> {
+    private final int numberOfSets;
+    private final int entriesPerSet;
+    private final Bucket[] buckets;
+
+    @SuppressWarnings("unchecked")
+    public EntryLayoutCache(final int numberOfSets, final int entriesPerSet) {
+        this.numberOfSets = numberOfSets;
+        this.entriesPerSet = entriesPerSet;
+        this.buckets = (Bucket[]) Array.newInstance(Bucket.class, numberOfSets);
+
+        for (int i = 0; i < numberOfSets; ++i) {
+            this.buckets[i] = new Bucket();
+        }
+    }
+
+    private Bucket bucketForHash(int hashCode) {
+        return this.buckets[Math.abs(hashCode) % this.numberOfSets];
+    }
+
+    private int indexForBucket(int hashCode) {
+        return Math.abs(hashCode) % this.entriesPerSet;
+    }
+
+    private boolean isMatch(final Entry entry, final int hash, final Object key) {
+        return entry.isSet &&
+                (entry.key == key ||
+                (entry.hash == hash && entry.key.equals(key)));
+    }
+
+    @Override
+    public V get(Object key) {
+        final int hash = key.hashCode();
+        final Bucket bucket = bucketForHash(hash);
+        final int startIndex = indexForBucket(hash);
+        int index = startIndex;
+
+        do {
+            final Entry entry = bucket.entries[index];
+            if (isMatch(entry, hash, key)) {
+                bucket.invalidator.touch(entry);
+                return entry.value;
+            }
+
+            if (++index == this.entriesPerSet) {
+                index = 0;
+            }
+        } while (index != startIndex);
+
+        return null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        final int hash = key.hashCode();
+        final Bucket bucket = bucketForHash(hash);
+        final int startIndex = indexForBucket(hash);
+        int index = startIndex;
+        Entry lastUnset = null;
+
+        do {
+            final Entry entry = bucket.entries[index];
+            if (isMatch(entry, hash, key)) {
+                final V oldValue = entry.value;
+                entry.value = value;
+                bucket.invalidator.touch(entry);
+
+                return oldValue;
+            } else if (!entry.isSet) {
+                lastUnset = entry;
+            }
+
+            if (++index == this.entriesPerSet) {
+                index = 0;
+            }
+        } while (index != startIndex);
+
+        if (lastUnset == null) {
+            if (!bucket.invalidator.invalidate()) {
+                throw new InvalidationException("Could not invalidate the bucket");
+            }
+
+            for (final Entry entry : bucket.entries) {
+                if (!entry.isSet) {
+                    lastUnset = entry;
+                }
+            }
+        }
+
+        lastUnset.key = key;
+        lastUnset.value = value;
+        lastUnset.hash = hash;
+        lastUnset.isSet = true;
+        bucket.invalidator.touch(lastUnset);
+
+        return value;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        throw new UnsupportedOperationException();
+    }
+
+    private class Bucket {
+        private final Entry[] entries;
+        private final CacheInvalidator<K, V> invalidator = new LRUInvalidator<>();
+
+        @SuppressWarnings("unchecked")
+        Bucket() {
+            this.entries = (Entry[]) Array.newInstance(Entry.class, entriesPerSet);
+
+            for (int i = 0; i < entriesPerSet; ++i) {
+                this.entries[i] = new Entry(i);
+            }
+        }
+    }
+
+    private class Entry implements IndexedEntry<K, V> {
+        private boolean isSet;
+        private K key;
+        private V value;
+        private int hash;
+        private final int way;
+
+        Entry(final int way) {
+            this.way = way;
+        }
+
+        @Override
+        public int way() {
+            return this.way;
+        }
+
+        @Override
+        public void unset() {
+            this.key = null;
+            this.value = null;
+            this.isSet = false;
+        }
+
+        @Override
+        public K getKey() {
+            return this.key;
+        }
+
+        @Override
+        public V getValue() {
+            return this.value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            throw new IllegalArgumentException("Not an internal associative cache entry class!");
+        }
+    }
+}
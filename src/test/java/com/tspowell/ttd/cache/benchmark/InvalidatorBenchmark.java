@@ -0,0 +1,85 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.invalidation.ARCInvalidator;
+import com.tspowell.ttd.cache.invalidation.CacheInvalidatorAdapter;
+import com.tspowell.ttd.cache.invalidation.IndexedCacheInvalidator;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.LRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.PseudoLRUInvalidator;
+import com.tspowell.ttd.cache.invalidation.TinyLFUInvalidator;
+import com.tspowell.ttd.cache.invalidation.WindowTinyLFUInvalidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through throughput of the invalidation policies, on a skewed key distribution where about half of
+ * all reads hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvalidatorBenchmark {
+
+    @Param({"lru", "indexed-lru", "plru", "tinylfu", "w-tinylfu", "arc"})
+    public String policy;
+
+    @Param({"4096"})
+    public int numberOfSets;
+
+    @Param({"8", "16", "64"})
+    public int entriesPerSet;
+
+    private SetAssociativeCache<Integer, Integer> cache;
+    private Integer[] keys;
+    private int index;
+
+    static IndexedCacheInvalidator.Factory<Integer, Integer> policy(final String name) {
+        switch (name) {
+            case "lru":
+                return CacheInvalidatorAdapter.factory(LRUInvalidator::new);
+            case "indexed-lru":
+                return IndexedLRUInvalidator::new;
+            case "plru":
+                return PseudoLRUInvalidator::new;
+            case "tinylfu":
+                return TinyLFUInvalidator.factory(IndexedLRUInvalidator::new);
+            case "w-tinylfu":
+                return WindowTinyLFUInvalidator::new;
+            case "arc":
+                return ARCInvalidator::new;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.cache = new SetAssociativeCache<>(this.numberOfSets, this.entriesPerSet, policy(this.policy));
+
+        final int universe = this.numberOfSets * this.entriesPerSet * 4;
+        final Random random = new Random(42);
+        this.keys = new Integer[1 << 16];
+
+        for (int i = 0; i < this.keys.length; ++i) {
+            this.keys[i] = (int) (Math.pow(random.nextDouble(), 3) * universe);
+        }
+    }
+
+    @Benchmark
+    public Integer readThrough() {
+        final Integer key = this.keys[this.index++ & (this.keys.length - 1)];
+        final Integer value = this.cache.get(key);
+
+        if (value == null) {
+            this.cache.put(key, key);
+        }
+
+        return value;
+    }
+}
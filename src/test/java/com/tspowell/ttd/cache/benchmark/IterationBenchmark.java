@@ -0,0 +1,59 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.CacheCursor;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.cache.Cache;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full scan of a full cache: the copying Iterable path against the in-place cursor and visitor.
+ * Run with {@code -prof gc} to see the allocation per scan.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterationBenchmark {
+    private static final int NUMBER_OF_SETS = 1 << 13;
+    private static final int ENTRIES_PER_SET = 8;
+
+    private SetAssociativeCache<Integer, Integer> cache;
+
+    @Setup
+    public void setup() {
+        this.cache = new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET);
+
+        for (int i = 0; i < NUMBER_OF_SETS * ENTRIES_PER_SET; ++i) {
+            this.cache.put(i, i);
+        }
+    }
+
+    @Benchmark
+    public void iterator(final Blackhole blackhole) {
+        for (final Cache.Entry<Integer, Integer> entry : this.cache) {
+            blackhole.consume(entry.getKey());
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+    @Benchmark
+    public void cursor(final Blackhole blackhole) {
+        for (final CacheCursor<Integer, Integer> cursor = this.cache.cursor(); cursor.advance(); ) {
+            blackhole.consume(cursor.key());
+            blackhole.consume(cursor.value());
+        }
+    }
+
+    @Benchmark
+    public void forEachEntry(final Blackhole blackhole) {
+        this.cache.forEachEntry((key, value) -> {
+            blackhole.consume(key);
+            blackhole.consume(value);
+        });
+    }
+}
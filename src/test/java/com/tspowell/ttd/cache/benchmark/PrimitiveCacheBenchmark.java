@@ -0,0 +1,65 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.LongLongSetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boxed against primitive long-to-long caches, on a mix of hits and inserts over keys outside the Long cache.
+ * Run with {@code -prof gc} to see the allocation rate: the primitive cache should allocate nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveCacheBenchmark {
+    private static final int NUMBER_OF_SETS = 1 << 14;
+    private static final int ENTRIES_PER_SET = 8;
+    private static final int KEYS = NUMBER_OF_SETS * ENTRIES_PER_SET * 2;
+
+    private SetAssociativeCache<Long, Long> boxed;
+    private LongLongSetAssociativeCache primitive;
+    private long[] keys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.boxed = new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET);
+        this.primitive = new LongLongSetAssociativeCache(NUMBER_OF_SETS, ENTRIES_PER_SET);
+        this.keys = new long[KEYS];
+
+        for (int i = 0; i < KEYS; ++i) {
+            this.keys[i] = 1000L + i * 31L;
+        }
+    }
+
+    @Benchmark
+    public long boxedReadThrough() {
+        final long key = this.keys[this.index++ & (KEYS - 1)];
+        final Long value = this.boxed.get(key);
+
+        if (value == null) {
+            this.boxed.put(key, key);
+            return key;
+        }
+
+        return value;
+    }
+
+    @Benchmark
+    public long primitiveReadThrough() {
+        final long key = this.keys[this.index++ & (KEYS - 1)];
+        final long value = this.primitive.get(key, -1L);
+
+        if (value == -1L) {
+            this.primitive.put(key, key);
+            return key;
+        }
+
+        return value;
+    }
+}
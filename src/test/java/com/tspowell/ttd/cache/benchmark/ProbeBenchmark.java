@@ -0,0 +1,62 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost by associativity on a full cache: hits, and misses that have to probe every way of the set.
+ * The cache is large enough that most probes go to memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeBenchmark {
+    private static final int CAPACITY = 1 << 20;
+
+    @Param({"8", "16", "32", "64"})
+    public int entriesPerSet;
+
+    private SetAssociativeCache<String, String> cache;
+    private String[] present;
+    private String[] absent;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.cache = new SetAssociativeCache<>(CAPACITY / this.entriesPerSet, this.entriesPerSet);
+        this.present = new String[1 << 16];
+        this.absent = new String[1 << 16];
+
+        for (int i = 0; i < CAPACITY * 2; ++i) {
+            final String key = "key-" + i;
+            this.cache.put(key, key);
+        }
+
+        int found = 0;
+        for (int i = CAPACITY * 2 - 1; found < this.present.length; --i) {
+            final String key = "key-" + i;
+            if (this.cache.containsKey(key)) {
+                this.present[found++] = key;
+            }
+        }
+
+        for (int i = 0; i < this.absent.length; ++i) {
+            this.absent[i] = "missing-" + i;
+        }
+    }
+
+    @Benchmark
+    public String hit() {
+        return this.cache.get(this.present[this.index++ & (this.present.length - 1)]);
+    }
+
+    @Benchmark
+    public String miss() {
+        return this.cache.get(this.absent[this.index++ & (this.absent.length - 1)]);
+    }
+}
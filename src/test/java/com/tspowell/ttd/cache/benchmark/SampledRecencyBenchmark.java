@@ -0,0 +1,69 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.invalidation.SampledInvalidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through throughput against hit ratio, when only a sample of the hits update the invalidator.
+ * The hit and miss counters are reported next to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SampledRecencyBenchmark {
+    private static final int NUMBER_OF_SETS = 4096;
+    private static final int ENTRIES_PER_SET = 16;
+
+    @Param({"lru", "indexed-lru"})
+    public String policy;
+
+    @Param({"1.0", "0.5", "0.125", "0.0"})
+    public double sampleRate;
+
+    private SetAssociativeCache<Integer, Integer> cache;
+    private Integer[] keys;
+    private int index;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HitCounter {
+        public long hits;
+        public long misses;
+    }
+
+    @Setup
+    public void setup() {
+        this.cache = new SetAssociativeCache<>(NUMBER_OF_SETS, ENTRIES_PER_SET,
+                SampledInvalidator.factory(this.sampleRate, InvalidatorBenchmark.policy(this.policy)));
+
+        final int universe = NUMBER_OF_SETS * ENTRIES_PER_SET * 4;
+        final Random random = new Random(42);
+        this.keys = new Integer[1 << 16];
+
+        for (int i = 0; i < this.keys.length; ++i) {
+            this.keys[i] = (int) (Math.pow(random.nextDouble(), 3) * universe);
+        }
+    }
+
+    @Benchmark
+    public Integer readThrough(final HitCounter counter) {
+        final Integer key = this.keys[this.index++ & (this.keys.length - 1)];
+        final Integer value = this.cache.get(key);
+
+        if (value == null) {
+            counter.misses++;
+            this.cache.put(key, key);
+        } else {
+            counter.hits++;
+        }
+
+        return value;
+    }
+}
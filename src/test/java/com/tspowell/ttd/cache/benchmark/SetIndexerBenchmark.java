@@ -0,0 +1,91 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import com.tspowell.ttd.cache.associative.SetIndexer;
+import com.tspowell.ttd.cache.associative.SetIndexers;
+import com.tspowell.ttd.cache.invalidation.IndexedLRUInvalidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of each set index function, and the hit ratio of a read-through cache on keys strided by the
+ * number of sets. "modulo-odd" uses one set fewer than the others, which forces the division path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetIndexerBenchmark {
+
+    @Param({"modulo-odd", "mask", "fibonacci", "xor-fold"})
+    public String indexer;
+
+    private static final int NUMBER_OF_SETS = 1024;
+    private static final int ENTRIES_PER_SET = 8;
+
+    private SetIndexer setIndexer;
+    private SetAssociativeCache<Integer, Integer> cache;
+    private Integer[] stridedKeys;
+    private int hash;
+    private int index;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HitCounter {
+        public long hits;
+        public long misses;
+    }
+
+    @Setup
+    public void setup() {
+        final int numberOfSets = "modulo-odd".equals(this.indexer) ? NUMBER_OF_SETS - 1 : NUMBER_OF_SETS;
+        final SetIndexers factory;
+
+        switch (this.indexer) {
+            case "modulo-odd":
+                factory = SetIndexers.MODULO;
+                break;
+            case "mask":
+                factory = SetIndexers.MASK;
+                break;
+            case "fibonacci":
+                factory = SetIndexers.FIBONACCI;
+                break;
+            default:
+                factory = SetIndexers.XOR_FOLD;
+        }
+
+        this.setIndexer = factory.create(numberOfSets);
+        this.cache = new SetAssociativeCache<>(numberOfSets, ENTRIES_PER_SET, IndexedLRUInvalidator::new, factory);
+
+        // Half as many keys as slots, all multiples of the number of sets
+        this.stridedKeys = new Integer[numberOfSets * ENTRIES_PER_SET / 2];
+        for (int i = 0; i < this.stridedKeys.length; ++i) {
+            this.stridedKeys[i] = i * numberOfSets;
+        }
+    }
+
+    @Benchmark
+    public int setIndex() {
+        this.hash += 0x61C88647;
+        return this.setIndexer.setIndex(this.hash);
+    }
+
+    @Benchmark
+    public Integer stridedReadThrough(final HitCounter counter) {
+        final Integer key = this.stridedKeys[this.index++ % this.stridedKeys.length];
+        final Integer value = this.cache.get(key);
+
+        if (value == null) {
+            counter.misses++;
+            this.cache.put(key, key);
+        } else {
+            counter.hits++;
+        }
+
+        return value;
+    }
+}
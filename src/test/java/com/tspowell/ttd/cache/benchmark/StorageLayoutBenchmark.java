@@ -0,0 +1,69 @@
+package com.tspowell.ttd.cache.benchmark;
+
+import com.tspowell.ttd.cache.associative.SetAssociativeCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the flat struct-of-arrays slot storage of SetAssociativeCache against the original
+ * object-per-slot layout on a mixed hit/miss workload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageLayoutBenchmark {
+
+    @Param({"flat", "entry"})
+    public String layout;
+
+    @Param({"4096"})
+    public int numberOfSets;
+
+    @Param({"8", "16"})
+    public int entriesPerSet;
+
+    private Map<Integer, Integer> cache;
+    private Integer[] keys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.cache = "flat".equals(this.layout)
+                ? new SetAssociativeCache<>(this.numberOfSets, this.entriesPerSet)
+                : new EntryLayoutCache<>(this.numberOfSets, this.entriesPerSet);
+
+        // Twice as many distinct keys as slots, so roughly half of all lookups miss
+        final int capacity = this.numberOfSets * this.entriesPerSet;
+        final Random random = new Random(42);
+        this.keys = new Integer[1 << 16];
+
+        for (int i = 0; i < this.keys.length; ++i) {
+            this.keys[i] = random.nextInt(capacity * 2);
+        }
+
+        for (final Integer key : this.keys) {
+            this.cache.put(key, key);
+        }
+    }
+
+    private Integer nextKey() {
+        return this.keys[this.index++ & (this.keys.length - 1)];
+    }
+
+    @Benchmark
+    public Integer get() {
+        return this.cache.get(nextKey());
+    }
+
+    @Benchmark
+    public Integer put() {
+        final Integer key = nextKey();
+        return this.cache.put(key, key);
+    }
+}
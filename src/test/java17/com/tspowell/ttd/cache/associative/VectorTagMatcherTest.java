@@ -0,0 +1,51 @@
+package com.tspowell.ttd.cache.associative;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The vector path must find exactly the ways the scalar loop finds, for every set width and wherever the set
+ * lies in the tag array.
+ */
+public class VectorTagMatcherTest {
+
+    private static long scalarMatches(final byte[] tags, final int offset, final int length, final byte tag) {
+        long matches = 0;
+
+        for (int way = 0; way < length; ++way) {
+            if (tags[offset + way] == tag) {
+                matches |= 1L << way;
+            }
+        }
+
+        return matches;
+    }
+
+    @Test
+    public void testMatchesScalarLoop() {
+        final Random random = new Random(5);
+        final byte[] tags = new byte[256];
+
+        for (int i = 0; i < 2000; ++i) {
+            // Few distinct tags, so that most sets have several matches
+            for (int j = 0; j < tags.length; ++j) {
+                tags[j] = (byte) (random.nextInt(4) - 2);
+            }
+
+            for (int length = 1; length <= 64; ++length) {
+                // Sets in the middle of the array, and sets whose tail lanes end at its last byte
+                final int offset = random.nextBoolean()
+                        ? random.nextInt(tags.length - length + 1)
+                        : tags.length - length;
+                final byte tag = (byte) (random.nextInt(4) - 2);
+
+                assertEquals("length " + length + ", offset " + offset,
+                        scalarMatches(tags, offset, length, tag),
+                        VectorTagMatcher.matches(tags, offset, length, tag));
+            }
+        }
+    }
+}